@@ -0,0 +1,31 @@
+package com.web.socket.websocket.benchmark;
+
+import com.web.socket.websocket.model.Quotes;
+import com.web.socket.websocket.model.ScreenerPage;
+import com.web.socket.websocket.source.PriceSource;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A PriceSource that takes turns returning the given quotes instead of fetching the screeners
+ */
+public class FixedPriceSource implements PriceSource {
+
+    private List<Quotes> ticks;
+    private int tick;
+
+    public FixedPriceSource(List<Quotes> ticks) {
+        this.ticks = ticks;
+    }
+
+    @Override
+    public List<String> getFeeds() {
+        return Collections.singletonList("fixed");
+    }
+
+    @Override
+    public ScreenerPage fetch(String feed) {
+        return new ScreenerPage(ticks.get(tick++ % ticks.size()), true);
+    }
+}
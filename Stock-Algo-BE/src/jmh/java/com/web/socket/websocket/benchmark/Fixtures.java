@@ -0,0 +1,127 @@
+package com.web.socket.websocket.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.web.socket.websocket.model.Quotes;
+import com.web.socket.websocket.model.Stock;
+import com.web.socket.websocket.model.StockState;
+import com.web.socket.websocket.model.TrendType;
+import com.web.socket.websocket.utility.SymbolTable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Stocks and screener pages for the benchmarks, generated with a fixed seed so every run measures the same data
+ */
+public class Fixtures {
+
+    private static final TrendType[] TRENDS = TrendType.values();
+
+    /**
+     * Reads a recorded screener page if a path is given, otherwise generates one with the given number of rows
+     *
+     * @param path
+     * @param rows
+     * @return
+     * @throws IOException
+     */
+    public static String screenerPage(String path, int rows) throws IOException {
+        if (path != null && !path.isEmpty()) {
+            return new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+        }
+
+        Random random = new Random(rows);
+        StringBuilder html = new StringBuilder("<html><head><title>Screener</title></head><body><div>\n<h1>Screener</h1>\n<div>\n<table>\n")
+                .append("<thead>\n<tr><th>Senast</th><th>Namn</th><th>Utv.</th></tr>\n</thead>\n<tbody>\n");
+        for (int i = 0; i < rows; i++) {
+            html.append("<tr>\n<td>").append(random.nextInt(1000)).append(',').append(10 + random.nextInt(90)).append("</td>\n")
+                    .append("<td>\n<a href=\"/aktier/om-aktien.html/").append(i).append("\">\n<img src=\"flag.png\">\n")
+                    .append(name(i)).append("\n</a>\n</td>\n")
+                    .append("<td><span>").append(random.nextInt(10)).append(",0 %</span></td>\n</tr>\n");
+        }
+        return html.append("</tbody>\n</table>\n</div>\n</div></body></html>").toString();
+    }
+
+    /**
+     * Stocks as they are stored in the database, evenly spread over the trends
+     *
+     * @param count
+     * @return
+     */
+    public static List<Stock> storedStocks(int count) {
+        Random random = new Random(count);
+        List<Stock> stocks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double price = 10 + random.nextInt(1000);
+            Stock stock = Stock.builder()
+                    .name(name(i))
+                    .website("Website")
+                    .lastPrice(price)
+                    .lowestClosingPrice(price * 0.95)
+                    .highestClosingPrice(price * 1.05)
+                    .trendType(TRENDS[i % TRENDS.length])
+                    .build();
+            stock.setEntry();
+            stocks.add(stock);
+        }
+        return stocks;
+    }
+
+    /**
+     * Prices as they are fetched from the screeners, where every changeEvery:th price has moved from the stored price
+     *
+     * @param stored
+     * @param changeEvery
+     * @param seed
+     * @return
+     */
+    public static Quotes fetchedQuotes(List<Stock> stored, int changeEvery, long seed) {
+        Random random = new Random(seed);
+        Quotes fetched = new Quotes(stored.size());
+        for (int i = 0; i < stored.size(); i++) {
+            double price = stored.get(i).getLastPrice();
+            if (i % changeEvery == 0) {
+                price = price * (0.9 + random.nextDouble() * 0.2);
+            }
+            fetched.add(SymbolTable.DEFAULT.intern(stored.get(i).getName()), price);
+        }
+        return fetched;
+    }
+
+    /**
+     * The stocks as the jobs keep them in memory
+     *
+     * @param stored
+     * @return
+     */
+    public static List<StockState> states(List<Stock> stored) {
+        List<StockState> states = new ArrayList<>(stored.size());
+        for (Stock stock : stored) {
+            int symbol = SymbolTable.DEFAULT.intern(stock.getName());
+            states.add(StockState.of(symbol, SymbolTable.DEFAULT.name(symbol), stock));
+        }
+        return states;
+    }
+
+    /**
+     * An ObjectMapper configured like the one Spring Boot gives the application
+     *
+     * @return
+     */
+    public static ObjectMapper objectMapper() {
+        return new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    private static String name(int i) {
+        return "Stock " + i + " B";
+    }
+}
@@ -0,0 +1,90 @@
+package com.web.socket.websocket.benchmark;
+
+import com.web.socket.websocket.model.Stock;
+import com.web.socket.websocket.repository.StockRepository;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A StockRepository kept in a map, so the benchmarks measure the application and not the database
+ */
+public class InMemoryStockRepository implements StockRepository {
+
+    private Map<String, Stock> stocks = new ConcurrentHashMap<>();
+
+    @Override
+    public <S extends Stock> S save(S stock) {
+        stocks.put(stock.getName(), stock);
+        return stock;
+    }
+
+    @Override
+    public <S extends Stock> Iterable<S> saveAll(Iterable<S> entities) {
+        entities.forEach(this::save);
+        return entities;
+    }
+
+    @Override
+    public Optional<Stock> findById(String name) {
+        return Optional.ofNullable(stocks.get(name));
+    }
+
+    @Override
+    public boolean existsById(String name) {
+        return stocks.containsKey(name);
+    }
+
+    @Override
+    public Iterable<Stock> findAll() {
+        return new ArrayList<>(stocks.values());
+    }
+
+    @Override
+    public Iterable<Stock> findAllById(Iterable<String> names) {
+        List<Stock> found = new ArrayList<>();
+        names.forEach(name -> findById(name).ifPresent(found::add));
+        return found;
+    }
+
+    @Override
+    public long count() {
+        return stocks.size();
+    }
+
+    @Override
+    public void deleteById(String name) {
+        stocks.remove(name);
+    }
+
+    @Override
+    public void delete(Stock stock) {
+        stocks.remove(stock.getName());
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Stock> entities) {
+        entities.forEach(this::delete);
+    }
+
+    @Override
+    public void deleteAll() {
+        stocks.clear();
+    }
+
+    @Override
+    public void upsertAll(Collection<Stock> toSave) {
+        toSave.forEach(this::save);
+    }
+
+    @Override
+    public int deleteByNames(Collection<String> names) {
+        int deleted = 0;
+        for (String name : names) {
+            if (stocks.remove(name) != null) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,62 @@
+package com.web.socket.websocket.benchmark;
+
+import com.web.socket.websocket.model.Stock;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.select.Elements;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The Document based parsing StockService used before ScreenerParser, kept as the baseline to compare with
+ */
+public class LegacyScreenerParser {
+
+    public static List<Stock> parse(String html) {
+        List<Stock> stocks = new ArrayList<>();
+
+        Document doc = Jsoup.parse(html);
+
+        Elements select = doc.select("body").select("div").select("table").select("tbody").select("tr");
+
+        for (int i = 0; i < select.size(); i++) {
+            try {
+                String name = select.get(i).childNodes().get(3).childNodes().get(1).childNodes().get(2).toString();
+
+                List<Node> prices = getStockPrice(doc, i);
+
+                Stock stock = Stock.builder()
+                        .name(name.trim())
+                        .website("Website")
+                        .lastPrice(toDouble(((Element) prices.get(0)).text()))
+                        .build();
+
+                stocks.add(stock);
+
+            } catch (IndexOutOfBoundsException ignored) {
+            }
+
+        }
+        return stocks;
+    }
+
+    private static List<Node> getStockPrice(Document doc, int index) {
+        List<Node> nodes = doc.select("body").select("div").get(0).childNodes().get(3).childNodes().get(1).childNodes().get(3).childNodes();
+
+        return nodes.stream()
+                .filter(node -> node.childNodeSize() > 0)
+                .collect(Collectors.toList())
+                .get(index).childNodes().stream()
+                .filter(n -> n.childNodeSize() > 0)
+                .collect(Collectors.toList());
+    }
+
+    private static Double toDouble(String number) {
+        String normalized = number.replaceAll(",", ".");
+        return Double.parseDouble(normalized);
+    }
+}
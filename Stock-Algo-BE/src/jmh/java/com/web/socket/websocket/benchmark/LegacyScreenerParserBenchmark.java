@@ -0,0 +1,43 @@
+package com.web.socket.websocket.benchmark;
+
+import com.web.socket.websocket.model.Stock;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The baseline for ScreenerParserBenchmark. It's quadratic in the number of rows,
+ * so it stops at 10000 symbols where it already takes seconds per page
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class LegacyScreenerParserBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int symbols;
+
+    @Param({""})
+    private String fixture;
+
+    private String html;
+
+    @Setup
+    public void setUp() throws IOException {
+        html = Fixtures.screenerPage(fixture, symbols);
+    }
+
+    @Benchmark
+    public List<Stock> document() {
+        return LegacyScreenerParser.parse(html);
+    }
+
+    @Benchmark
+    public double parsePrice() {
+        return Double.parseDouble("1234,56".replaceAll(",", "."));
+    }
+}
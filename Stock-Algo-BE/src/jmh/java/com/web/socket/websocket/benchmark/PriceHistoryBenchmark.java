@@ -0,0 +1,54 @@
+package com.web.socket.websocket.benchmark;
+
+import com.web.socket.websocket.utility.PriceHistory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appending a tick to a full PriceHistory and querying a window of the given number of minutes,
+ * with a price every second
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PriceHistoryBenchmark {
+
+    private static final int CAPACITY = 4096;
+
+    @Param({"1", "15", "60"})
+    private int minutes;
+
+    private PriceHistory history;
+    private long time;
+
+    @Setup
+    public void setUp() {
+        history = new PriceHistory(CAPACITY);
+        for (int i = 0; i < CAPACITY; i++) {
+            tick();
+        }
+    }
+
+    @Benchmark
+    public void append() {
+        tick();
+    }
+
+    @Benchmark
+    public double min() {
+        return history.min(time - TimeUnit.MINUTES.toMillis(minutes));
+    }
+
+    @Benchmark
+    public double average() {
+        return history.average(time - TimeUnit.MINUTES.toMillis(minutes), time);
+    }
+
+    private void tick() {
+        time += 1000;
+        history.append(time, 100 + (time / 1000) % 17);
+    }
+}
@@ -0,0 +1,65 @@
+package com.web.socket.websocket.benchmark;
+
+import com.web.socket.websocket.model.StockState;
+import com.web.socket.websocket.model.TrendType;
+import com.web.socket.websocket.utility.StockComparator;
+import com.web.socket.websocket.utility.TrendIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeping the down trend ordered by entry when a hundredth of the entries change,
+ * by repositioning the changed stocks in TrendIndex compared to sorting the whole list with StockComparator
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RankingBenchmark {
+
+    private static final int CHANGE_EVERY = 100;
+
+    @Param({"100", "1000", "10000", "100000"})
+    private int symbols;
+
+    private List<StockState> stocks;
+    private List<StockState> changed;
+    private TrendIndex trendIndex;
+    private int tick;
+
+    @Setup
+    public void setUp() {
+        stocks = Fixtures.states(Fixtures.storedStocks(symbols));
+        stocks.forEach(stock -> stock.setTrendType(TrendType.DOWN));
+        changed = new ArrayList<>();
+        for (int i = 0; i < stocks.size(); i += CHANGE_EVERY) {
+            changed.add(stocks.get(i));
+        }
+        trendIndex = new TrendIndex();
+        stocks.forEach(trendIndex::add);
+    }
+
+    @Benchmark
+    public List<StockState> reposition() {
+        moveEntries();
+        changed.forEach(trendIndex::reposition);
+        return trendIndex.descending(TrendType.DOWN);
+    }
+
+    @Benchmark
+    public List<StockState> fullSort() {
+        moveEntries();
+        List<StockState> sorted = new ArrayList<>(stocks);
+        sorted.sort(new StockComparator().reversed());
+        return sorted;
+    }
+
+    private void moveEntries() {
+        double delta = (tick++ & 1) == 0 ? 0.5 : -0.5;
+        changed.forEach(stock -> stock.setEntry(stock.getEntry() + delta));
+    }
+}
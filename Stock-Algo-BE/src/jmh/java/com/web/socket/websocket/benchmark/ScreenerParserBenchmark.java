@@ -0,0 +1,43 @@
+package com.web.socket.websocket.benchmark;
+
+import com.web.socket.websocket.model.Quotes;
+import com.web.socket.websocket.utility.ScreenerParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a screener page with ScreenerParser.
+ * Pass -p fixture=path/to/page.html to parse a recorded page instead of a generated one
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ScreenerParserBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    private int symbols;
+
+    @Param({""})
+    private String fixture;
+
+    private String html;
+
+    @Setup
+    public void setUp() throws IOException {
+        html = Fixtures.screenerPage(fixture, symbols);
+    }
+
+    @Benchmark
+    public Quotes forwardPass() {
+        return ScreenerParser.parse(html);
+    }
+
+    @Benchmark
+    public double parsePrice() {
+        return ScreenerParser.parsePrice("1 234,56");
+    }
+}
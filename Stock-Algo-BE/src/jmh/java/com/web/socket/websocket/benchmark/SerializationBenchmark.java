@@ -0,0 +1,57 @@
+package com.web.socket.websocket.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.web.socket.websocket.model.ListDelta;
+import com.web.socket.websocket.model.Stock;
+import com.web.socket.websocket.model.StockDelta;
+import com.web.socket.websocket.model.StockResult;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializing the full StockResult compared to a StockDelta where a tenth of the stocks changed
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SerializationBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    private int symbols;
+
+    private ObjectMapper objectMapper;
+    private StockResult result;
+    private StockDelta delta;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Fixtures.objectMapper();
+        List<Stock> stocks = Fixtures.storedStocks(symbols);
+        int half = stocks.size() / 2;
+        result = new StockResult(stocks.subList(0, half), stocks.subList(half, stocks.size()), new ArrayList<>());
+
+        List<Stock> changed = new ArrayList<>();
+        for (int i = 0; i < stocks.size(); i += 10) {
+            changed.add(stocks.get(i));
+        }
+        ListDelta empty = new ListDelta(Collections.emptyList(), Collections.emptyList());
+        delta = new StockDelta(1, changed, empty, empty, empty);
+    }
+
+    @Benchmark
+    public byte[] fullResult() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(result);
+    }
+
+    @Benchmark
+    public byte[] delta() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(delta);
+    }
+}
@@ -0,0 +1,111 @@
+package com.web.socket.websocket.benchmark;
+
+import com.web.socket.websocket.StockSubscriptions;
+import com.web.socket.websocket.cluster.WriteFence;
+import com.web.socket.websocket.controller.StockRefreshService;
+import com.web.socket.websocket.model.Stock;
+import com.web.socket.websocket.service.PriceHistoryStore;
+import com.web.socket.websocket.service.StockPublisher;
+import com.web.socket.websocket.service.StockStore;
+import com.web.socket.websocket.service.StockViews;
+import com.web.socket.websocket.service.StrategyEngine;
+import com.web.socket.websocket.service.TickJournal;
+import com.web.socket.websocket.service.WarmStartStore;
+import com.web.socket.websocket.utility.StockFetcher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One tick of live() and one run of saveStockWhenClosing(), with the screeners and the database replaced
+ * by in-memory stubs. Every tick a tenth of the prices move. The strategies are variants of the live rules
+ * run beside them, every other one with a window over the price history
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class StockRefreshServiceBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    private int symbols;
+
+    @Param({"0", "24"})
+    private int strategies;
+
+    private StockFetcher stockFetcher;
+    private StockStore stockStore;
+    private TickJournal tickJournal;
+    private StockRefreshService stockRefreshService;
+
+    @Setup
+    public void setUp() throws IOException {
+        InMemoryStockRepository repository = new InMemoryStockRepository();
+        List<Stock> stored = Fixtures.storedStocks(symbols);
+        repository.saveAll(stored);
+
+        FixedPriceSource priceSource = new FixedPriceSource(Arrays.asList(
+                Fixtures.fetchedQuotes(stored, 10, 1),
+                Fixtures.fetchedQuotes(stored, 10, 2)));
+        SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> true);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        stockFetcher = new StockFetcher(priceSource, meterRegistry, 1000);
+        stockStore = new StockStore(repository, WriteFence.NONE, meterRegistry, 60_000, 2000, 20_000);
+        StockPublisher stockPublisher = new StockPublisher(template, Fixtures.objectMapper(),
+                new StockViews(new StockSubscriptions(meterRegistry), meterRegistry, 1000), meterRegistry);
+        tickJournal = new TickJournal(meterRegistry, Files.createTempDirectory("journal").toString(), 16 << 20, 0);
+        WarmStartStore warmStartStore = new WarmStartStore(WriteFence.NONE, meterRegistry,
+                Files.createTempDirectory("warm-start").resolve("warm-start.bin").toString(), 600_000);
+        stockRefreshService = new StockRefreshService(stockFetcher, stockPublisher, stockStore,
+                new PriceHistoryStore(meterRegistry, 4096), tickJournal, warmStartStore,
+                new StrategyEngine(strategyEnvironment(), meterRegistry), meterRegistry, 1024);
+        stockRefreshService.populateLists();
+    }
+
+    private StandardEnvironment strategyEnvironment() {
+        Map<String, Object> properties = new HashMap<>();
+        StringBuilder names = new StringBuilder();
+        for (int i = 0; i < strategies; i++) {
+            String name = "variant" + i;
+            names.append(name).append(',');
+            properties.put("stock.strategy." + name + ".trends", i % 3 == 0 ? "DOWN,UNDECIDED" : "DOWN");
+            properties.put("stock.strategy." + name + ".min-entry", -0.5 * i);
+            if (i % 2 == 1) {
+                properties.put("stock.strategy." + name + ".window-millis", 60_000);
+                properties.put("stock.strategy." + name + ".min-rise", 0.01);
+            }
+        }
+        properties.put("stock.strategies", names.toString());
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new MapPropertySource("strategies", properties));
+        return environment;
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        stockFetcher.shutdown();
+        stockStore.shutdown();
+        tickJournal.close();
+    }
+
+    @Benchmark
+    public void live() {
+        stockRefreshService.live();
+    }
+
+    @Benchmark
+    public void saveStockWhenClosing() {
+        stockRefreshService.saveStockWhenClosing();
+    }
+}
@@ -0,0 +1,129 @@
+package com.web.socket.websocket;
+
+import com.web.socket.websocket.cluster.LeaderElection;
+import com.web.socket.websocket.controller.StockRefreshService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.scheduling.support.PeriodicTrigger;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the stock jobs on their own scheduler instead of sharing one with the message broker.
+ * A cron job never overlaps itself and the next run is calculated from when the last one finished,
+ * so runs missed by a slow job are coalesced into one. How late every run starts is recorded in stock.schedule.lag.
+ * With stock.schedule.live-period-millis the live job runs that often instead of on its cron schedule,
+ * which can be less than the second a cron schedule is limited to, like when a replay or synthetic source is load tested.
+ * The jobs only run on the node that is the leader, the other nodes of a cluster skip them.
+ * The warm start is written every stock.warm-start.interval-millis, besides after clearing and closing
+ */
+@Configuration
+public class SchedulingConfig implements SchedulingConfigurer {
+
+    private StockRefreshService stockRefreshService;
+    private LeaderElection leaderElection;
+    private MeterRegistry meterRegistry;
+
+    @Value("${stock.schedule.clear}")
+    private String clearCron;
+    @Value("${stock.schedule.populate}")
+    private String populateCron;
+    @Value("${stock.schedule.live}")
+    private String liveCron;
+    @Value("${stock.schedule.live-period-millis:0}")
+    private long livePeriodMillis;
+    @Value("${stock.schedule.closing}")
+    private String closingCron;
+    @Value("${stock.schedule.pool-size:2}")
+    private int poolSize;
+    @Value("${stock.warm-start.interval-millis:60000}")
+    private long warmStartMillis;
+
+    @Autowired
+    public SchedulingConfig(StockRefreshService stockRefreshService, LeaderElection leaderElection,
+                            MeterRegistry meterRegistry) {
+        this.stockRefreshService = stockRefreshService;
+        this.leaderElection = leaderElection;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * A running job is allowed to finish on shutdown, but the runs that aren't due yet are dropped
+     * so they don't keep the scheduler threads alive until their time comes
+     *
+     * @return
+     */
+    @Bean
+    public ThreadPoolTaskScheduler stockTaskScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler() {
+            @Override
+            protected ScheduledExecutorService createExecutor(int poolSize, ThreadFactory threadFactory,
+                                                              RejectedExecutionHandler rejectedExecutionHandler) {
+                ScheduledThreadPoolExecutor executor = (ScheduledThreadPoolExecutor)
+                        super.createExecutor(poolSize, threadFactory, rejectedExecutionHandler);
+                executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+                return executor;
+            }
+        };
+        scheduler.setPoolSize(poolSize);
+        scheduler.setThreadNamePrefix("stock-scheduler-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        return scheduler;
+    }
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar registrar) {
+        registrar.setTaskScheduler(stockTaskScheduler());
+        registrar.addTriggerTask(leaderOnly(stockRefreshService::clearLists), trigger("clear", new CronTrigger(clearCron)));
+        registrar.addTriggerTask(leaderOnly(stockRefreshService::populateLists),
+                trigger("populate", new CronTrigger(populateCron)));
+        registrar.addTriggerTask(leaderOnly(stockRefreshService::live), trigger("live", livePeriodMillis > 0
+                ? new PeriodicTrigger(livePeriodMillis, TimeUnit.MILLISECONDS)
+                : new CronTrigger(liveCron)));
+        registrar.addTriggerTask(leaderOnly(stockRefreshService::saveStockWhenClosing),
+                trigger("closing", new CronTrigger(closingCron)));
+        if (warmStartMillis > 0) {
+            registrar.addTriggerTask(leaderOnly(stockRefreshService::saveWarmStart), trigger("warm-start",
+                    new PeriodicTrigger(warmStartMillis, TimeUnit.MILLISECONDS)));
+        }
+    }
+
+    private Runnable leaderOnly(Runnable job) {
+        return () -> {
+            if (leaderElection.isLeader()) {
+                job.run();
+            }
+        };
+    }
+
+    /**
+     * A trigger that records how late the last run started compared to when it was scheduled
+     *
+     * @param job
+     * @param trigger
+     * @return
+     */
+    private Trigger trigger(String job, Trigger trigger) {
+        Timer lag = meterRegistry.timer("stock.schedule.lag", "job", job);
+        return context -> {
+            if (context.lastScheduledExecutionTime() != null && context.lastActualExecutionTime() != null) {
+                lag.record(context.lastActualExecutionTime().getTime() - context.lastScheduledExecutionTime().getTime(),
+                        TimeUnit.MILLISECONDS);
+            }
+            return trigger.nextExecutionTime(context);
+        };
+    }
+}
@@ -0,0 +1,117 @@
+package com.web.socket.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drops broadcasts to a session that already has more than maxBufferedBytes waiting to be written to the client,
+ * so a lagging client skips stale ticks instead of filling its send buffer until the session is closed.
+ * The bytes of a message are counted for its session when it's sent to the outbound channel and taken off again
+ * once its frame has been written to the connection, so they cover the outbound threads, the send buffer
+ * and the write that is blocked on a slow client. The frame is a little larger than the payload,
+ * which only makes the count err towards sending. The client notices the gap in the sequence and asks for a new snapshot
+ */
+@Slf4j
+public class SlowConsumerInterceptor implements ChannelInterceptor, WebSocketHandlerDecoratorFactory {
+
+    private long maxBufferedBytes;
+    private Map<String, AtomicLong> buffered = new ConcurrentHashMap<>();
+
+    public SlowConsumerInterceptor(long maxBufferedBytes) {
+        this.maxBufferedBytes = maxBufferedBytes;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        AtomicLong bytes = sessionId == null ? null : buffered.get(sessionId);
+        if (bytes == null) {
+            return message;
+        }
+
+        if (isBroadcast(message) && bytes.get() > maxBufferedBytes) {
+            log.debug("Dropping message to slow session " + sessionId + ", " + bytes.get() + " bytes buffered");
+            return null;
+        }
+        if (message.getPayload() instanceof byte[]) {
+            bytes.addAndGet(((byte[]) message.getPayload()).length);
+        }
+        return message;
+    }
+
+    /**
+     * Counts the bytes written to every session, from the first frame to the last
+     *
+     * @param handler
+     * @return
+     */
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                AtomicLong bytes = new AtomicLong();
+                buffered.put(session.getId(), bytes);
+                super.afterConnectionEstablished(new WrittenBytes(session, bytes));
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                buffered.remove(session.getId());
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    /**
+     * Only the messages sent to /topic/ can be dropped, replies and acknowledgements are always sent
+     *
+     * @param message
+     * @return
+     */
+    private boolean isBroadcast(Message<?> message) {
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        return SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE
+                && destination != null
+                && destination.startsWith("/topic/");
+    }
+
+    /**
+     * Takes the frames written to the connection off the bytes buffered for the session
+     */
+    private static class WrittenBytes extends WebSocketSessionDecorator {
+
+        private final AtomicLong bytes;
+
+        private WrittenBytes(WebSocketSession session, AtomicLong bytes) {
+            super(session);
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            try {
+                super.sendMessage(message);
+            } finally {
+                bytes.accumulateAndGet(message.getPayloadLength(), (buffered, written) -> Math.max(0, buffered - written));
+            }
+        }
+    }
+}
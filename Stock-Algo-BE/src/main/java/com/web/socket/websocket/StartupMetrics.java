@@ -0,0 +1,38 @@
+package com.web.socket.websocket;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long it took from when the JVM started until the application was ready to tick in stock.startup.
+ * It's recorded after the election has started, which is when a standalone node recovers its lists,
+ * a clustered node is then ready to be elected. The time of the recovery itself is in stock.startup.restore
+ */
+@Slf4j
+@Component
+public class StartupMetrics {
+
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    public StartupMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void ready() {
+        long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        meterRegistry.timer("stock.startup").record(uptime, TimeUnit.MILLISECONDS);
+        log.info("Ready to tick " + uptime + " ms after the JVM started");
+    }
+}
@@ -0,0 +1,97 @@
+package com.web.socket.websocket;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the clients subscribed to /topic/stock destinations and to their own /user/queue/stock destinations,
+ * the number of subscribed sessions is exposed as stock.subscribers.
+ * It also counts the subscribers of every destination, so only the views someone subscribes to are published
+ */
+@Component
+public class StockSubscriptions {
+
+    private static final String STOCK_TOPIC = "/topic/stock";
+    private static final String STOCK_USER_QUEUE = "/user/queue/stock";
+
+    private Map<String, Map<String, String>> subscriptions = new ConcurrentHashMap<>();
+    private Map<String, Integer> destinations = new ConcurrentHashMap<>();
+
+    @Autowired
+    public StockSubscriptions(MeterRegistry meterRegistry) {
+        meterRegistry.gauge("stock.subscribers", subscriptions, Map::size);
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String destination = accessor.getDestination();
+        if (accessor.getSessionId() != null && destination != null
+                && (destination.startsWith(STOCK_TOPIC) || destination.startsWith(STOCK_USER_QUEUE))) {
+            String previous = subscriptions.computeIfAbsent(accessor.getSessionId(), id -> new ConcurrentHashMap<>())
+                    .put(accessor.getSubscriptionId(), destination);
+            if (previous != null) {
+                release(previous);
+            }
+            destinations.merge(destination, 1, Integer::sum);
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        if (accessor.getSessionId() == null) {
+            return;
+        }
+        Map<String, String> session = subscriptions.get(accessor.getSessionId());
+        String destination = session == null ? null : session.remove(accessor.getSubscriptionId());
+        if (destination != null) {
+            release(destination);
+        }
+        subscriptions.computeIfPresent(accessor.getSessionId(), (id, destinations) -> destinations.isEmpty() ? null : destinations);
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Map<String, String> session = subscriptions.remove(event.getSessionId());
+        if (session != null) {
+            session.values().forEach(this::release);
+        }
+    }
+
+    /**
+     * Gets the destinations that at least one client is subscribed to
+     *
+     * @return
+     */
+    public Set<String> getDestinations() {
+        return destinations.keySet();
+    }
+
+    /**
+     * Gets the destinations the session is subscribed to
+     *
+     * @param sessionId
+     * @return
+     */
+    public Collection<String> getDestinations(String sessionId) {
+        Map<String, String> session = subscriptions.get(sessionId);
+        return session == null ? Collections.emptyList() : session.values();
+    }
+
+    private void release(String destination) {
+        destinations.computeIfPresent(destination, (key, count) -> count > 1 ? count - 1 : null);
+    }
+}
@@ -1,15 +1,30 @@
 package com.web.socket.websocket;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    @Value("${stock.websocket.inbound-pool-size:4}")
+    private int inboundPoolSize;
+    @Value("${stock.websocket.outbound-pool-size:8}")
+    private int outboundPoolSize;
+    @Value("${stock.websocket.send-time-limit-millis:10000}")
+    private int sendTimeLimitMillis;
+    @Value("${stock.websocket.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+    @Value("${stock.websocket.max-buffered-bytes-per-session:65536}")
+    private int maxBufferedBytesPerSession;
+    private SlowConsumerInterceptor slowConsumerInterceptor;
+
     /**
      * Adds /stock-list as an endpoint for data to be transferred to via socket
      * @param stompEndpointRegistry
@@ -22,11 +37,55 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     }
 
     /**
-     * enables sending of data to destination that has a prefix of /topic/
+     * enables sending of data to destination that has a prefix of /topic/ or /queue/
+     * and routes messages with a prefix of /app to the message mappings.
+     * The broker runs on its own thread so publishing never waits for the broker,
+     * a single thread keeps the messages in the order they were published
      * @param registry
      */
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
-        registry.enableSimpleBroker("/topic/");
+        registry.enableSimpleBroker("/topic/", "/queue/");
+        registry.setApplicationDestinationPrefixes("/app");
+        registry.configureBrokerChannel().taskExecutor().corePoolSize(1).maxPoolSize(1);
+    }
+
+    /**
+     * Sets the number of threads handling messages from the clients
+     * @param registration
+     */
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor().corePoolSize(inboundPoolSize).maxPoolSize(inboundPoolSize);
+    }
+
+    /**
+     * Sets the number of threads sending messages to the clients,
+     * and drops broadcasts to the clients that can't keep up
+     * @param registration
+     */
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor().corePoolSize(outboundPoolSize).maxPoolSize(outboundPoolSize);
+        registration.interceptors(slowConsumerInterceptor());
+    }
+
+    /**
+     * Limits how long a send to a client may take and how much may be buffered for it
+     * before the session is closed, and counts what's written to find the slow consumers
+     * @param registration
+     */
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(sendTimeLimitMillis)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .addDecoratorFactory(slowConsumerInterceptor());
+    }
+
+    private SlowConsumerInterceptor slowConsumerInterceptor() {
+        if (slowConsumerInterceptor == null) {
+            slowConsumerInterceptor = new SlowConsumerInterceptor(maxBufferedBytesPerSession);
+        }
+        return slowConsumerInterceptor;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,205 @@
+package com.web.socket.websocket.backtest;
+
+import com.web.socket.websocket.model.TrendType;
+import com.web.socket.websocket.utility.ParallelEvaluation;
+import com.web.socket.websocket.utility.TrendRules;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs recorded prices through the same trend rules as the live jobs, without Spring or the database.
+ * For every stock and set of rules it follows what the jobs would have done:
+ * <ul>
+ * <li>the first closing price adds the stock as undecided</li>
+ * <li>a price during the day updates the entry and is a buy signal if the rules say so,
+ * at most one per stock and day like the lists that are cleared every morning</li>
+ * <li>a closing price is first seen as a price during the day, then it updates the closing prices and entry
+ * and moves the stock between the trends</li>
+ * </ul>
+ * The stocks are simulated in parallel on the fork-join pool, each of them with every set of rules
+ */
+public class Backtest {
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final int SIGNALS = 0;
+    private static final int HITS = 1;
+    private static final int UP_MOVES = 2;
+    private static final int DOWN_MOVES = 3;
+
+    private final List<TrendRules> rules;
+    private final long horizonMillis;
+    private final double target;
+
+    /**
+     * @param rules         the sets of rules to try
+     * @param horizonMillis how long after a buy signal the price may reach the target
+     * @param target        how much the price has to rise after a buy signal to be a hit, 0.03 is 3%
+     */
+    public Backtest(List<TrendRules> rules, long horizonMillis, double target) {
+        this.rules = rules;
+        this.horizonMillis = horizonMillis;
+        this.target = target;
+    }
+
+    /**
+     * Runs every set of rules over the prices
+     *
+     * @param series
+     * @return a result for each set of rules, in the order they were given
+     */
+    public List<BacktestResult> run(List<PriceSeries> series) {
+        List<long[][]> counted = ParallelEvaluation.evaluate(series, this::simulate, 1);
+
+        long[][] total = new long[rules.size()][4];
+        for (long[][] counts : counted) {
+            for (int r = 0; r < rules.size(); r++) {
+                for (int c = 0; c < total[r].length; c++) {
+                    total[r][c] += counts[r][c];
+                }
+            }
+        }
+
+        List<BacktestResult> results = new ArrayList<>(rules.size());
+        for (int r = 0; r < rules.size(); r++) {
+            results.add(new BacktestResult(rules.get(r), total[r][SIGNALS], total[r][HITS],
+                    total[r][UP_MOVES], total[r][DOWN_MOVES]));
+        }
+        return results;
+    }
+
+    private long[][] simulate(PriceSeries series) {
+        long[][] counts = new long[rules.size()][4];
+        for (int r = 0; r < rules.size(); r++) {
+            simulate(series, rules.get(r), counts[r]);
+        }
+        return counts;
+    }
+
+    /**
+     * Follows one stock through the prices with one set of rules
+     *
+     * @param series
+     * @param trendRules
+     * @param counts
+     */
+    private void simulate(PriceSeries series, TrendRules trendRules, long[] counts) {
+        TrendType trendType = null;
+        double highest = 0;
+        double lowest = 0;
+        long day = Long.MIN_VALUE;
+        boolean signaled = false;
+
+        for (int i = 0; i < series.size(); i++) {
+            double price = series.price(i);
+            long today = Math.floorDiv(series.time(i), DAY_MILLIS);
+            if (today != day) {
+                day = today;
+                signaled = false;
+            }
+
+            if (trendType != null && !signaled && trendRules.isBuySignal(trendType, trendRules.entry(price, lowest))) {
+                signaled = true;
+                counts[SIGNALS]++;
+                if (isHit(series, i)) {
+                    counts[HITS]++;
+                }
+            }
+
+            if (!series.isClosing(i)) {
+                continue;
+            }
+            if (trendType == null) {
+                trendType = TrendType.UNDECIDED;
+                highest = price;
+                lowest = price;
+                continue;
+            }
+
+            highest = Math.max(highest, price);
+            lowest = Math.min(lowest, price);
+            TrendType move = trendRules.transition(trendType, price, trendRules.entry(price, lowest), highest, lowest);
+            if (move == TrendType.UP) {
+                highest = price;
+                trendType = TrendType.UP;
+                counts[UP_MOVES]++;
+            } else if (move == TrendType.DOWN) {
+                lowest = price;
+                trendType = TrendType.DOWN;
+                counts[DOWN_MOVES]++;
+            }
+        }
+    }
+
+    /**
+     * Did the price reach the target within the horizon after the signal?
+     *
+     * @param series
+     * @param signal
+     * @return
+     */
+    private boolean isHit(PriceSeries series, int signal) {
+        double targetPrice = series.price(signal) * (1 + target);
+        long end = series.time(signal) + horizonMillis;
+        for (int i = signal + 1; i < series.size() && series.time(i) <= end; i++) {
+            if (series.price(i) >= targetPrice) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs a backtest from the command line, the arguments after the path are optional:
+     * path up=1.02,1.03,1.05 down=0.90,0.92 horizon-days=5 target=0.03
+     *
+     * @param args
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: Backtest <csv file or directory> [up=1.03,...] [down=0.92,...] [horizon-days=5] [target=0.03]");
+            return;
+        }
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "");
+        }
+        List<Double> upFactors = factors(options.getOrDefault("up", String.valueOf(TrendRules.DEFAULT.getUptrendFactor())));
+        List<Double> downFactors = factors(options.getOrDefault("down", String.valueOf(TrendRules.DEFAULT.getDowntrendFactor())));
+        long horizonMillis = TimeUnit.DAYS.toMillis(Long.parseLong(options.getOrDefault("horizon-days", "5")));
+        double target = Double.parseDouble(options.getOrDefault("target", "0.03"));
+
+        List<TrendRules> rules = new ArrayList<>();
+        upFactors.forEach(up -> downFactors.forEach(down -> rules.add(new TrendRules(up, down))));
+
+        long start = System.nanoTime();
+        List<PriceSeries> series = PriceSeriesReader.read(Paths.get(args[0]));
+        long prices = series.stream().mapToLong(PriceSeries::size).sum();
+        long read = System.nanoTime();
+        List<BacktestResult> results = new Backtest(rules, horizonMillis, target).run(series);
+        long done = System.nanoTime();
+
+        System.out.println("Read " + prices + " prices of " + series.size() + " stocks in "
+                + TimeUnit.NANOSECONDS.toMillis(read - start) + " ms, ran " + rules.size() + " sets of rules in "
+                + TimeUnit.NANOSECONDS.toMillis(done - read) + " ms");
+        System.out.println(String.format("%-8s %-8s %10s %10s %8s %10s %10s", "up", "down", "signals", "hits", "hit rate", "to up", "to down"));
+        results.stream()
+                .sorted(Comparator.comparingDouble(BacktestResult::getHitRate).reversed())
+                .forEach(result -> System.out.println(String.format("%-8.4f %-8.4f %10d %10d %7.1f%% %10d %10d",
+                        result.getRules().getUptrendFactor(), result.getRules().getDowntrendFactor(),
+                        result.getSignals(), result.getHits(), result.getHitRate() * 100,
+                        result.getUpMoves(), result.getDownMoves())));
+    }
+
+    private static List<Double> factors(String text) {
+        List<Double> factors = new ArrayList<>();
+        for (String factor : text.split(",")) {
+            factors.add(Double.parseDouble(factor.trim()));
+        }
+        return factors;
+    }
+}
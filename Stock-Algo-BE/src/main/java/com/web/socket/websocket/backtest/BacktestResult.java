@@ -0,0 +1,24 @@
+package com.web.socket.websocket.backtest;
+
+import com.web.socket.websocket.utility.TrendRules;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * What a set of rules came to over all the stocks of a backtest.
+ * A buy signal is a hit if the price reached the target within the horizon after the signal
+ */
+@Data
+@AllArgsConstructor
+public class BacktestResult {
+
+    private TrendRules rules;
+    private long signals;
+    private long hits;
+    private long upMoves;
+    private long downMoves;
+
+    public double getHitRate() {
+        return signals == 0 ? 0 : (double) hits / signals;
+    }
+}
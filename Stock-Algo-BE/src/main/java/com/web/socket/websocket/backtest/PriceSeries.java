@@ -0,0 +1,64 @@
+package com.web.socket.websocket.backtest;
+
+import java.util.Arrays;
+
+/**
+ * The recorded prices of one stock in time order, kept in primitive arrays.
+ * The times are the local date and time of the prices in milliseconds, counted as if they were UTC,
+ * so the day of a price is its time divided by the milliseconds of a day. Times in epoch milliseconds,
+ * which are UTC, are converted to local time by PriceSeriesReader before they're added
+ */
+public class PriceSeries {
+
+    private final String name;
+    private long[] times = new long[64];
+    private double[] prices = new double[64];
+    private boolean[] closings = new boolean[64];
+    private int size;
+
+    public PriceSeries(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Adds a price after the last one
+     *
+     * @param time    the local date and time in milliseconds, counted as if it was UTC
+     * @param price
+     * @param closing is it the closing price of the day?
+     */
+    public void add(long time, double price, boolean closing) {
+        if (size > 0 && time < times[size - 1]) {
+            throw new IllegalArgumentException("Price of " + name + " at " + time + " is before the last one");
+        }
+        if (size == times.length) {
+            times = Arrays.copyOf(times, size * 2);
+            prices = Arrays.copyOf(prices, size * 2);
+            closings = Arrays.copyOf(closings, size * 2);
+        }
+        times[size] = time;
+        prices[size] = price;
+        closings[size] = closing;
+        size++;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long time(int index) {
+        return times[index];
+    }
+
+    public double price(int index) {
+        return prices[index];
+    }
+
+    public boolean isClosing(int index) {
+        return closings[index];
+    }
+}
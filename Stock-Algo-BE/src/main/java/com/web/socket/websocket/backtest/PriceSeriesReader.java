@@ -0,0 +1,175 @@
+package com.web.socket.websocket.backtest;
+
+import com.web.socket.websocket.utility.ScreenerParser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reads recorded prices from csv files, one price per line written as name;time;price;type.
+ * The time is a local date and time like 2020-01-02T09:30:00, a date or epoch milliseconds,
+ * a date alone is taken as the time the closing job runs. Epoch milliseconds are converted to the local time
+ * of the default time zone, like the live jobs see it, so every time of a series is local. The price may be written as 1,23 or 1.23
+ * and the type is C for a closing price and T for a price during the day. Lines starting with # are skipped.
+ * The prices of a stock may be spread over several files, which are read in the order of their names
+ */
+public class PriceSeriesReader {
+
+    private static final LocalTime CLOSING_TIME = LocalTime.of(18, 15);
+
+    private PriceSeriesReader() {
+    }
+
+    /**
+     * Reads a csv file, or all the csv files in a directory and its subdirectories
+     *
+     * @param path
+     * @return the series of every stock, in the order they were first seen
+     * @throws IOException
+     */
+    public static List<PriceSeries> read(Path path) throws IOException {
+        List<Path> files;
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> walk = Files.walk(path)) {
+                files = walk.filter(Files::isRegularFile)
+                        .filter(file -> file.getFileName().toString().endsWith(".csv"))
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+        } else {
+            files = Collections.singletonList(path);
+        }
+
+        Map<String, PriceSeries> series = new LinkedHashMap<>();
+        for (Path file : files) {
+            read(file, series);
+        }
+        return new ArrayList<>(series.values());
+    }
+
+    private static void read(Path file, Map<String, PriceSeries> series) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    readLine(line, series);
+                } catch (IllegalArgumentException | DateTimeException e) {
+                    throw new IOException(file + ":" + number + ": " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private static void readLine(String line, Map<String, PriceSeries> series) {
+        int nameEnd = line.indexOf(';');
+        int timeEnd = nameEnd < 0 ? -1 : line.indexOf(';', nameEnd + 1);
+        int priceEnd = timeEnd < 0 ? -1 : line.indexOf(';', timeEnd + 1);
+        if (priceEnd < 0) {
+            throw new IllegalArgumentException("Expected name;time;price;type");
+        }
+
+        String name = line.substring(0, nameEnd);
+        long time = parseTime(line.substring(nameEnd + 1, timeEnd).trim());
+        double price = ScreenerParser.parsePrice(line.subSequence(timeEnd + 1, priceEnd));
+        String type = line.substring(priceEnd + 1).trim();
+        if (Double.isNaN(price)) {
+            throw new IllegalArgumentException("Invalid price");
+        }
+        if (!type.equals("C") && !type.equals("T")) {
+            throw new IllegalArgumentException("Type must be C or T");
+        }
+        series.computeIfAbsent(name, PriceSeries::new).add(time, price, type.equals("C"));
+    }
+
+    private static long parseTime(String text) {
+        if (!text.isEmpty() && text.chars().allMatch(Character::isDigit)) {
+            return toLocal(Long.parseLong(text));
+        }
+        long fast = parseIsoTime(text);
+        if (fast != Long.MIN_VALUE) {
+            return fast;
+        }
+        LocalDateTime dateTime = text.indexOf('T') < 0
+                ? LocalDate.parse(text).atTime(CLOSING_TIME)
+                : LocalDateTime.parse(text);
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    /**
+     * Converts epoch milliseconds to the local date and time of the default time zone, counted as if it was UTC
+     * like the other times of a series
+     *
+     * @param epochMillis
+     * @return
+     */
+    private static long toLocal(long epochMillis) {
+        Instant instant = Instant.ofEpochMilli(epochMillis);
+        return epochMillis + TimeUnit.SECONDS.toMillis(ZoneId.systemDefault().getRules().getOffset(instant).getTotalSeconds());
+    }
+
+    /**
+     * Parses yyyy-MM-dd, yyyy-MM-ddTHH:mm and yyyy-MM-ddTHH:mm:ss without the formatter,
+     * which is most of the time spent reading years of prices
+     *
+     * @param text
+     * @return the time, or Long.MIN_VALUE if the text has another format
+     */
+    private static long parseIsoTime(String text) {
+        int length = text.length();
+        if ((length != 10 && length != 16 && length != 19) || text.charAt(4) != '-' || text.charAt(7) != '-') {
+            return Long.MIN_VALUE;
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 7);
+        int day = digits(text, 8, 10);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31) {
+            return Long.MIN_VALUE;
+        }
+
+        int secondOfDay = CLOSING_TIME.toSecondOfDay();
+        if (length > 10) {
+            if (text.charAt(10) != 'T' || text.charAt(13) != ':' || (length == 19 && text.charAt(16) != ':')) {
+                return Long.MIN_VALUE;
+            }
+            int hour = digits(text, 11, 13);
+            int minute = digits(text, 14, 16);
+            int second = length == 19 ? digits(text, 17, 19) : 0;
+            if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+                return Long.MIN_VALUE;
+            }
+            secondOfDay = hour * 3600 + minute * 60 + second;
+        }
+        return TimeUnit.DAYS.toMillis(LocalDate.of(year, month, day).toEpochDay()) + TimeUnit.SECONDS.toMillis(secondOfDay);
+    }
+
+    private static int digits(String text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
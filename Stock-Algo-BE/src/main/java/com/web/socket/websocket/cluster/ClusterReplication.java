@@ -0,0 +1,136 @@
+package com.web.socket.websocket.cluster;
+
+import com.web.socket.websocket.model.Stock;
+import com.web.socket.websocket.model.StockResult;
+import com.web.socket.websocket.model.StockSnapshot;
+import com.web.socket.websocket.service.StockPublisher;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Replicates the lists from the leader to the other nodes of a cluster, a standalone node does nothing here.
+ * The leader encodes every snapshot it publishes and hands it to the transport, the other nodes publish the snapshots
+ * they receive to their own clients, so every node serves WebSocket and REST clients the same way.
+ * A received stock that hasn't changed is replaced by the one received before, so the publisher and the views
+ * see it as unchanged. The snapshots sent and applied are counted in stock.cluster.snapshots,
+ * their size is in stock.cluster.snapshot.bytes and how old the last applied one was in stock.cluster.lag
+ */
+@Slf4j
+@Service
+public class ClusterReplication {
+
+    private LeaderElection leaderElection;
+    private StockPublisher stockPublisher;
+    private SnapshotTransport snapshotTransport;
+    private Counter sent;
+    private Counter applied;
+    private DistributionSummary snapshotBytes;
+    private Map<String, Stock> replicated = new HashMap<>();
+    private String appliedProducer;
+    private long appliedSequence;
+    private volatile long appliedLag;
+
+    @Autowired
+    public ClusterReplication(LeaderElection leaderElection, StockPublisher stockPublisher,
+                              SnapshotTransport snapshotTransport, MeterRegistry meterRegistry) {
+        this.leaderElection = leaderElection;
+        this.stockPublisher = stockPublisher;
+        this.snapshotTransport = snapshotTransport;
+        this.sent = meterRegistry.counter("stock.cluster.snapshots", "direction", "sent");
+        this.applied = meterRegistry.counter("stock.cluster.snapshots", "direction", "applied");
+        this.snapshotBytes = meterRegistry.summary("stock.cluster.snapshot.bytes");
+        meterRegistry.gauge("stock.cluster.lag", this, replication -> replication.appliedLag);
+
+        if (leaderElection.getRole() != NodeRole.STANDALONE) {
+            stockPublisher.addListener(this::produce);
+            snapshotTransport.subscribe(this::apply);
+        }
+    }
+
+    /**
+     * A node that has become the leader starts with the lists it has just taken over, so the other nodes
+     * have a snapshot to get from it before the lists change. It's called after the takeover,
+     * before the node is the leader
+     *
+     * @param event
+     */
+    @EventListener
+    public void onLeadership(LeadershipEvent event) {
+        if (event.isLeader() && event.isTakeover()) {
+            send(stockPublisher.snapshot());
+        }
+    }
+
+    /**
+     * Sends a snapshot the leader has just published to the other nodes
+     *
+     * @param snapshot
+     */
+    private void produce(StockSnapshot snapshot) {
+        if (leaderElection.isLeader()) {
+            send(snapshot);
+        }
+    }
+
+    private void send(StockSnapshot snapshot) {
+        byte[] bytes = SnapshotCodec.encode(new ReplicatedSnapshot(leaderElection.getNodeId(), snapshot.getSequence(),
+                System.currentTimeMillis(), new StockResult(snapshot.getUpTrend(), snapshot.getDownTrend(),
+                snapshot.getStocksNotified())));
+        snapshotTransport.publish(bytes);
+        sent.increment();
+        snapshotBytes.record(bytes.length);
+    }
+
+    /**
+     * Publishes a snapshot received from the leader, unless it's older than the last one of the same leader
+     *
+     * @param bytes
+     */
+    private synchronized void apply(byte[] bytes) {
+        if (leaderElection.isLeader()) {
+            return;
+        }
+        ReplicatedSnapshot snapshot;
+        try {
+            snapshot = SnapshotCodec.decode(bytes);
+        } catch (IOException | RuntimeException e) {
+            log.info("Error reading a replicated snapshot: " + e.getMessage());
+            return;
+        }
+        if (snapshot.getProducer().equals(appliedProducer) && snapshot.getSequence() <= appliedSequence) {
+            return;
+        }
+        appliedProducer = snapshot.getProducer();
+        appliedSequence = snapshot.getSequence();
+
+        Map<String, Stock> received = new HashMap<>();
+        StockResult result = snapshot.getResult();
+        stockPublisher.publish(new StockResult(reuse(result.getUpTrend(), received),
+                reuse(result.getDownTrend(), received), reuse(result.getStocksNotified(), received)));
+        replicated = received;
+        applied.increment();
+        appliedLag = System.currentTimeMillis() - snapshot.getTime();
+    }
+
+    private List<Stock> reuse(List<Stock> stocks, Map<String, Stock> received) {
+        List<Stock> reused = new ArrayList<>(stocks.size());
+        for (Stock stock : stocks) {
+            Stock kept = received.get(stock.getName());
+            if (kept == null) {
+                Stock previous = replicated.get(stock.getName());
+                kept = previous != null && previous.hasSameValues(stock) ? previous : stock;
+                received.put(stock.getName(), kept);
+            }
+            reused.add(kept);
+        }
+        return Collections.unmodifiableList(reused);
+    }
+}
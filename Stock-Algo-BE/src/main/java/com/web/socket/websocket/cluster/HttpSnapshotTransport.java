@@ -0,0 +1,129 @@
+package com.web.socket.websocket.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * The leader keeps its latest snapshot in memory and serves it on /cluster/snapshot, the other nodes poll the address
+ * of the leader every stock.cluster.poll-millis with the ETag of the snapshot they have, so an unchanged snapshot
+ * is only a 304. When the leader changes the nodes find the new one through the lease
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stock.cluster.transport", havingValue = "http", matchIfMissing = true)
+public class HttpSnapshotTransport implements SnapshotTransport {
+
+    public static final String PATH = "/cluster/snapshot";
+
+    private LeaderElection leaderElection;
+    private long pollMillis;
+    private int timeoutMillis;
+    private ScheduledExecutorService poller;
+    private AtomicLong published = new AtomicLong();
+    private volatile Snapshot latest;
+    private String polledAddress;
+    private String polledEtag;
+
+    @Autowired
+    public HttpSnapshotTransport(LeaderElection leaderElection,
+                                 @Value("${stock.cluster.poll-millis:250}") long pollMillis,
+                                 @Value("${stock.fetch.timeout-millis:5000}") int timeoutMillis) {
+        this.leaderElection = leaderElection;
+        this.pollMillis = pollMillis;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public void publish(byte[] snapshot) {
+        latest = new Snapshot(snapshot, "\"" + leaderElection.getNodeId() + "-" + published.incrementAndGet() + "\"");
+    }
+
+    /**
+     * Gets the latest snapshot published by this node, for the other nodes
+     *
+     * @return the snapshot, or null if this node isn't the leader or hasn't published one yet
+     */
+    public Snapshot getLatest() {
+        return leaderElection.isLeader() ? latest : null;
+    }
+
+    @Override
+    public void subscribe(Consumer<byte[]> receiver) {
+        poller = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("stock-replica-"));
+        poller.scheduleWithFixedDelay(() -> poll(receiver), 0, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void poll(Consumer<byte[]> receiver) {
+        String address = leaderElection.getLeaderAddress();
+        if (leaderElection.isLeader() || address == null) {
+            return;
+        }
+        if (!address.equals(polledAddress)) {
+            polledAddress = address;
+            polledEtag = null;
+        }
+        try {
+            Connection connection = Jsoup.connect(address + PATH)
+                    .ignoreContentType(true)
+                    .ignoreHttpErrors(true)
+                    .maxBodySize(0)
+                    .timeout(timeoutMillis);
+            if (polledEtag != null) {
+                connection.header("If-None-Match", polledEtag);
+            }
+            Connection.Response response = connection.execute();
+            if (response.statusCode() == HttpURLConnection.HTTP_OK) {
+                polledEtag = response.header("ETag");
+                receiver.accept(response.bodyAsBytes());
+            } else if (response.statusCode() != HttpURLConnection.HTTP_NOT_MODIFIED) {
+                log.debug("Polling " + address + " returned " + response.statusCode());
+            }
+        } catch (IOException | RuntimeException e) {
+            log.info("Error polling the snapshot of " + address + ": " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+    }
+
+    /**
+     * A published snapshot and its ETag
+     */
+    public static class Snapshot {
+
+        private final byte[] bytes;
+        private final String etag;
+
+        Snapshot(byte[] bytes, String etag) {
+            this.bytes = bytes;
+            this.etag = etag;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+    }
+}
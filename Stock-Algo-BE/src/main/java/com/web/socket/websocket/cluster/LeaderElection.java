@@ -0,0 +1,271 @@
+package com.web.socket.websocket.cluster;
+
+import com.web.socket.websocket.model.Lease;
+import com.web.socket.websocket.repository.LeaseRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides which node runs the jobs. A standalone node always does and a replica never does,
+ * clustered nodes compete for a lease in the database that the leader renews every stock.cluster.renew-millis.
+ * The nodes never compare their clocks: a lease has expired once a node has seen it go unrenewed
+ * for stock.cluster.lease-millis by its own clock, and a leader that can't reach the database steps down
+ * stock.cluster.renew-millis before that. So they only depend on the clocks running at about the same rate.
+ * <p>
+ * Every time the lease is taken its epoch goes up, and the writes of the jobs are fenced by it: they're only run
+ * in a transaction that has locked the lease and found it still held with the epoch this node was elected with.
+ * Every change is published as a LeadershipEvent, this node is the leader only after the event has been handled,
+ * so the jobs don't start before the lists are taken over. Whether it is the leader is in stock.cluster.leader
+ */
+@Slf4j
+@Service
+public class LeaderElection implements WriteFence {
+
+    private static final String LEASE = "producer";
+
+    private LeaseRepository leaseRepository;
+    private ApplicationEventPublisher eventPublisher;
+    private TransactionTemplate transactionTemplate;
+    private NodeRole role;
+    private String nodeId;
+    private String address;
+    private long leaseNanos;
+    private long renewNanos;
+    private ScheduledExecutorService elector;
+    private long renewedAt;
+    private Lease observed;
+    private long observedAt;
+    private volatile long epoch;
+    private volatile boolean leader;
+    private volatile String leaderAddress;
+
+    @Autowired
+    public LeaderElection(LeaseRepository leaseRepository, ApplicationEventPublisher eventPublisher,
+                          PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                          @Value("${stock.cluster.role:standalone}") String role,
+                          @Value("${stock.cluster.address:}") String address,
+                          @Value("${stock.cluster.lease-millis:10000}") long leaseMillis,
+                          @Value("${stock.cluster.renew-millis:2000}") long renewMillis) {
+        this.leaseRepository = leaseRepository;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.role = NodeRole.valueOf(role.trim().toUpperCase());
+        this.nodeId = hostName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+        this.address = address;
+        this.leaseNanos = TimeUnit.MILLISECONDS.toNanos(leaseMillis);
+        this.renewNanos = TimeUnit.MILLISECONDS.toNanos(renewMillis);
+        meterRegistry.gauge("stock.cluster.leader", this, election -> election.leader ? 1 : 0);
+        if (this.role == NodeRole.CLUSTER && address.isEmpty()) {
+            throw new IllegalStateException("stock.cluster.address must be set for a clustered node");
+        }
+    }
+
+    /**
+     * Starts the election once the application is ready, before the other listeners so a standalone node
+     * has recovered its lists when the startup is recorded. A standalone node becomes the leader at once,
+     * its jobs run once it has recovered its lists
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (role == NodeRole.STANDALONE) {
+            eventPublisher.publishEvent(new LeadershipEvent(true, false));
+            leader = true;
+            return;
+        }
+        log.info("Joining the cluster as " + nodeId + " with role " + role);
+        leaseRepository.createTable();
+        elector = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("stock-leader-"));
+        elector.scheduleWithFixedDelay(this::elect, 0, renewNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Takes or renews the lease and finds out where the leader is
+     */
+    private void elect() {
+        long now = System.nanoTime();
+        boolean elected;
+        long electedEpoch = epoch;
+        try {
+            Lease lease = leaseRepository.find(LEASE);
+            observe(lease, now);
+            if (leader) {
+                elected = leaseRepository.renew(LEASE, nodeId, address, epoch);
+            } else if (role == NodeRole.CLUSTER && isExpired(lease, now)) {
+                elected = lease == null
+                        ? leaseRepository.insert(LEASE, nodeId, address)
+                        : leaseRepository.take(LEASE, nodeId, address, lease);
+                electedEpoch = lease == null ? 1 : lease.getEpoch() + 1;
+            } else {
+                elected = false;
+            }
+            if (elected) {
+                renewedAt = now;
+            }
+            leaderAddress = elected ? address : !isExpired(lease, now) ? lease.getAddress() : null;
+        } catch (RuntimeException e) {
+            log.info("Error renewing the lease: " + e.getMessage());
+            elected = leader && now - renewedAt < leaseNanos - renewNanos;
+        }
+
+        if (elected && !leader) {
+            epoch = electedEpoch;
+            log.info("Elected leader with epoch " + epoch + ", taking over the jobs");
+            eventPublisher.publishEvent(new LeadershipEvent(true, true));
+            leader = true;
+        } else if (!elected && leader) {
+            leader = false;
+            log.info("No longer the leader, stopping the jobs");
+            eventPublisher.publishEvent(new LeadershipEvent(false, true));
+        }
+    }
+
+    /**
+     * Remembers when the lease was last seen to change, by the clock of this node
+     *
+     * @param lease
+     * @param now
+     */
+    private void observe(Lease lease, long now) {
+        if (lease != null && (observed == null || lease.getEpoch() != observed.getEpoch()
+                || lease.getRenewals() != observed.getRenewals())) {
+            observed = lease;
+            observedAt = now;
+        }
+    }
+
+    /**
+     * Can the lease be taken? It can if it has never been taken, has been released,
+     * or hasn't changed for the time of a lease since this node has seen it
+     *
+     * @param lease
+     * @param now
+     * @return
+     */
+    private boolean isExpired(Lease lease, long now) {
+        return lease == null || lease.getOwner().isEmpty() || now - observedAt >= leaseNanos;
+    }
+
+    /**
+     * Runs the writes in a transaction that first locks the lease and checks that this node still holds it
+     * with the epoch it was elected with, a standalone node runs them as they are
+     *
+     * @param writes
+     */
+    @Override
+    public void run(Runnable writes) {
+        if (role == NodeRole.STANDALONE) {
+            writes.run();
+            return;
+        }
+        long fencedEpoch = epoch;
+        transactionTemplate.execute(status -> {
+            if (!leaseRepository.isHeld(LEASE, nodeId, fencedEpoch)) {
+                throw new IllegalStateException("Not writing, " + nodeId + " no longer holds the lease of epoch "
+                        + fencedEpoch);
+            }
+            writes.run();
+            return null;
+        });
+    }
+
+    @Override
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Reads the epoch of the lease, which is there even if this node is standalone but the database has been
+     * shared by a cluster
+     *
+     * @return the epoch, 0 if the lease has never been taken
+     */
+    @Override
+    public long latestEpoch() {
+        try {
+            Lease lease = leaseRepository.find(LEASE);
+            return lease == null ? 0 : lease.getEpoch();
+        } catch (DataAccessException e) {
+            // the table is only created by clustered nodes
+            return 0;
+        }
+    }
+
+    /**
+     * Does this node run the jobs?
+     *
+     * @return
+     */
+    public boolean isLeader() {
+        return leader;
+    }
+
+    public NodeRole getRole() {
+        return role;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Where the leader serves its snapshots
+     *
+     * @return the address, or null if there is no leader right now
+     */
+    public String getLeaderAddress() {
+        return leaderAddress;
+    }
+
+    /**
+     * Stops running the jobs and releases the lease when the application is closed, before the beans are destroyed,
+     * so what the leader has left is saved and another node takes over without waiting for the lease to expire
+     *
+     * @throws InterruptedException
+     */
+    @EventListener(ContextClosedEvent.class)
+    public void shutdown() throws InterruptedException {
+        if (elector == null) {
+            return;
+        }
+        elector.shutdownNow();
+        elector.awaitTermination(5, TimeUnit.SECONDS);
+        if (leader) {
+            leader = false;
+            eventPublisher.publishEvent(new LeadershipEvent(false, true));
+            try {
+                leaseRepository.release(LEASE, nodeId, epoch);
+            } catch (RuntimeException e) {
+                log.info("Error releasing the lease: " + e.getMessage());
+            }
+        }
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "node";
+        }
+    }
+}
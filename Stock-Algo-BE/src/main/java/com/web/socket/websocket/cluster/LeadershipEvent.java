@@ -0,0 +1,14 @@
+package com.web.socket.websocket.cluster;
+
+import lombok.Value;
+
+/**
+ * Published when the node starts or stops running the jobs. A takeover is when a clustered node becomes the leader,
+ * it may take over from another node in the middle of the day, while a standalone node is the leader from the start
+ */
+@Value
+public class LeadershipEvent {
+
+    private boolean leader;
+    private boolean takeover;
+}
@@ -0,0 +1,68 @@
+package com.web.socket.websocket.cluster;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * An embedded broker for nodes running in the same JVM, like several application contexts in a test.
+ * The nodes on the same stock.cluster.local.channel get each other's snapshots, each node on its own thread
+ */
+@Component
+@ConditionalOnProperty(name = "stock.cluster.transport", havingValue = "local")
+public class LocalSnapshotTransport implements SnapshotTransport {
+
+    private static final Map<String, Channel> CHANNELS = new ConcurrentHashMap<>();
+
+    private Channel channel;
+    private ExecutorService receiving = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("stock-replica-"));
+    private Consumer<byte[]> receiver;
+
+    @Autowired
+    public LocalSnapshotTransport(@Value("${stock.cluster.local.channel:default}") String channel) {
+        this.channel = CHANNELS.computeIfAbsent(channel, name -> new Channel());
+    }
+
+    @Override
+    public void publish(byte[] snapshot) {
+        channel.latest = snapshot;
+        channel.subscribers.forEach(subscriber -> subscriber.receive(snapshot));
+    }
+
+    @Override
+    public void subscribe(Consumer<byte[]> receiver) {
+        this.receiver = receiver;
+        channel.subscribers.add(this);
+        byte[] latest = channel.latest;
+        if (latest != null) {
+            receive(latest);
+        }
+    }
+
+    private void receive(byte[] snapshot) {
+        receiving.execute(() -> receiver.accept(snapshot));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        channel.subscribers.remove(this);
+        receiving.shutdown();
+    }
+
+    private static class Channel {
+
+        private final List<LocalSnapshotTransport> subscribers = new CopyOnWriteArrayList<>();
+        private volatile byte[] latest;
+    }
+}
@@ -0,0 +1,13 @@
+package com.web.socket.websocket.cluster;
+
+/**
+ * What a node does, set with stock.cluster.role:
+ * <ul>
+ * <li>standalone runs the jobs and serves the clients on its own, the default</li>
+ * <li>cluster runs the jobs while it holds the lease and serves the clients from the leader's snapshots otherwise</li>
+ * <li>replica never runs the jobs and only serves the clients from the leader's snapshots</li>
+ * </ul>
+ */
+public enum NodeRole {
+    STANDALONE, CLUSTER, REPLICA
+}
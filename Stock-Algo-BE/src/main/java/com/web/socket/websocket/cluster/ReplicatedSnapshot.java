@@ -0,0 +1,16 @@
+package com.web.socket.websocket.cluster;
+
+import com.web.socket.websocket.model.StockResult;
+import lombok.Value;
+
+/**
+ * The lists as the leader published them, with the node that produced them, its sequence and when, in epoch milliseconds
+ */
+@Value
+public class ReplicatedSnapshot {
+
+    private String producer;
+    private long sequence;
+    private long time;
+    private StockResult result;
+}
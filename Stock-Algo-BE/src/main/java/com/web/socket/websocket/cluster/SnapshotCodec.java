@@ -0,0 +1,127 @@
+package com.web.socket.websocket.cluster;
+
+import com.web.socket.websocket.model.Stock;
+import com.web.socket.websocket.model.StockResult;
+import com.web.socket.websocket.model.TrendType;
+
+import java.io.*;
+import java.time.LocalTime;
+import java.util.*;
+
+/**
+ * Writes the snapshots the leader replicates in a compact binary form. Every stock is written once,
+ * with its trend as an ordinal and the time of its buy signal as the second of the day,
+ * and the lists are written as the positions of their stocks
+ */
+public class SnapshotCodec {
+
+    private static final int VERSION = 1;
+    private static final TrendType[] TRENDS = TrendType.values();
+
+    private SnapshotCodec() {
+    }
+
+    /**
+     * @param snapshot
+     * @return the snapshot as bytes
+     */
+    public static byte[] encode(ReplicatedSnapshot snapshot) {
+        StockResult result = snapshot.getResult();
+        Map<String, Integer> positions = new HashMap<>();
+        List<Stock> stocks = new ArrayList<>();
+        for (List<Stock> list : Arrays.asList(result.getUpTrend(), result.getDownTrend(), result.getStocksNotified())) {
+            for (Stock stock : list) {
+                if (positions.putIfAbsent(stock.getName(), stocks.size()) == null) {
+                    stocks.add(stock);
+                }
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + stocks.size() * 64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeUTF(snapshot.getProducer());
+            out.writeLong(snapshot.getSequence());
+            out.writeLong(snapshot.getTime());
+            out.writeInt(stocks.size());
+            for (Stock stock : stocks) {
+                writeStock(out, stock);
+            }
+            writeList(out, result.getUpTrend(), positions);
+            writeList(out, result.getDownTrend(), positions);
+            writeList(out, result.getStocksNotified(), positions);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param bytes
+     * @return the snapshot, with new stocks that nothing else refers to
+     * @throws IOException if the bytes aren't a snapshot of this version
+     */
+    public static ReplicatedSnapshot decode(byte[] bytes) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unknown snapshot version " + version);
+            }
+            String producer = in.readUTF();
+            long sequence = in.readLong();
+            long time = in.readLong();
+            Stock[] stocks = new Stock[in.readInt()];
+            for (int i = 0; i < stocks.length; i++) {
+                stocks[i] = readStock(in);
+            }
+            StockResult result = new StockResult(readList(in, stocks), readList(in, stocks), readList(in, stocks));
+            return new ReplicatedSnapshot(producer, sequence, time, result);
+        }
+    }
+
+    private static void writeStock(DataOutputStream out, Stock stock) throws IOException {
+        out.writeUTF(stock.getName());
+        out.writeBoolean(stock.getWebsite() != null);
+        if (stock.getWebsite() != null) {
+            out.writeUTF(stock.getWebsite());
+        }
+        out.writeDouble(stock.getLastPrice());
+        out.writeDouble(stock.getHighestClosingPrice());
+        out.writeDouble(stock.getLowestClosingPrice());
+        out.writeDouble(stock.getEntry());
+        out.writeBoolean(stock.isNotified());
+        out.writeByte(stock.getTrendType() == null ? -1 : stock.getTrendType().ordinal());
+        out.writeInt(stock.getTimeOfBuySignal() == null ? -1 : stock.getTimeOfBuySignal().toSecondOfDay());
+    }
+
+    private static Stock readStock(DataInputStream in) throws IOException {
+        String name = in.readUTF();
+        String website = in.readBoolean() ? in.readUTF() : null;
+        double lastPrice = in.readDouble();
+        double highestClosingPrice = in.readDouble();
+        double lowestClosingPrice = in.readDouble();
+        double entry = in.readDouble();
+        boolean notified = in.readBoolean();
+        byte trend = in.readByte();
+        int signal = in.readInt();
+        return new Stock(name, website, lastPrice, highestClosingPrice, lowestClosingPrice, entry, notified,
+                trend < 0 ? null : TRENDS[trend], signal < 0 ? null : LocalTime.ofSecondOfDay(signal));
+    }
+
+    private static void writeList(DataOutputStream out, List<Stock> list, Map<String, Integer> positions)
+            throws IOException {
+        out.writeInt(list.size());
+        for (Stock stock : list) {
+            out.writeInt(positions.get(stock.getName()));
+        }
+    }
+
+    private static List<Stock> readList(DataInputStream in, Stock[] stocks) throws IOException {
+        int size = in.readInt();
+        List<Stock> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(stocks[in.readInt()]);
+        }
+        return Collections.unmodifiableList(list);
+    }
+}
@@ -0,0 +1,24 @@
+package com.web.socket.websocket.cluster;
+
+import java.util.function.Consumer;
+
+/**
+ * How the leader's snapshots reach the other nodes, chosen with stock.cluster.transport:
+ * http (the default) where the nodes poll the leader, or local where the nodes of one JVM share an in-memory broker
+ */
+public interface SnapshotTransport {
+
+    /**
+     * Makes the snapshot available to the other nodes, replacing the one before it. Called by the leader
+     *
+     * @param snapshot
+     */
+    void publish(byte[] snapshot);
+
+    /**
+     * Starts handing the snapshots of the leader to the receiver, one at a time and the latest first
+     *
+     * @param receiver
+     */
+    void subscribe(Consumer<byte[]> receiver);
+}
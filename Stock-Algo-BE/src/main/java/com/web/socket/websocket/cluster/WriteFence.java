@@ -0,0 +1,39 @@
+package com.web.socket.websocket.cluster;
+
+/**
+ * Guards the writes of the jobs to the database, so a node that has lost the lease without noticing yet
+ * can't overwrite what the new leader has written
+ */
+public interface WriteFence {
+
+    /**
+     * A fence for a node that is the only one writing
+     */
+    WriteFence NONE = Runnable::run;
+
+    /**
+     * Runs the writes in one transaction if this node may still write, or throws without running them
+     *
+     * @param writes
+     * @throws IllegalStateException if the node no longer holds the lease it was elected with
+     */
+    void run(Runnable writes);
+
+    /**
+     * The epoch this node writes with, 0 for a node that is the only one writing
+     *
+     * @return
+     */
+    default long getEpoch() {
+        return 0;
+    }
+
+    /**
+     * The epoch of the last node elected to write, as it is in the database now
+     *
+     * @return the epoch, 0 if no node has ever been elected
+     */
+    default long latestEpoch() {
+        return 0;
+    }
+}
@@ -0,0 +1,46 @@
+package com.web.socket.websocket.controller;
+
+import com.web.socket.websocket.cluster.HttpSnapshotTransport;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+/**
+ * Serves the leader's latest snapshot to the other nodes of the cluster
+ */
+@RestController
+@ConditionalOnProperty(name = "stock.cluster.transport", havingValue = "http", matchIfMissing = true)
+public class ClusterController {
+
+    private HttpSnapshotTransport snapshotTransport;
+
+    @Autowired
+    public ClusterController(HttpSnapshotTransport snapshotTransport) {
+        this.snapshotTransport = snapshotTransport;
+    }
+
+    /**
+     * The latest snapshot, a 304 if the node already has it or a 404 if this node isn't the leader
+     *
+     * @param request
+     * @return
+     */
+    @GetMapping(HttpSnapshotTransport.PATH)
+    public ResponseEntity<byte[]> snapshot(WebRequest request) {
+        HttpSnapshotTransport.Snapshot latest = snapshotTransport.getLatest();
+        if (latest == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (request.checkNotModified(latest.getEtag())) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .eTag(latest.getEtag())
+                .body(latest.getBytes());
+    }
+}
@@ -0,0 +1,119 @@
+package com.web.socket.websocket.controller;
+
+import com.web.socket.websocket.model.TrendType;
+import com.web.socket.websocket.service.StockQueryService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalTime;
+
+/**
+ * Lets the clients poll the lists without a WebSocket. Every response has the ETag of the snapshot it was taken from,
+ * a request with the same If-None-Match gets a 304 until the lists have changed.
+ * The undecided stocks aren't published, asking for them is a 400.
+ * It isn't needed by the ticks, so it's created on the first request instead of when the application starts
+ */
+@Lazy
+@RestController
+public class StockQueryController {
+
+    private StockQueryService stockQueryService;
+
+    @Autowired
+    public StockQueryController(StockQueryService stockQueryService) {
+        this.stockQueryService = stockQueryService;
+    }
+
+    /**
+     * The stocks of a trend, or all of them, optionally with an entry between minEntry and maxEntry, e.g.
+     * /stocks?trend=UP&minEntry=0&page=0&size=50
+     *
+     * @param trend    UP or DOWN
+     * @param minEntry
+     * @param maxEntry
+     * @param page
+     * @param size
+     * @param request
+     * @return
+     */
+    @GetMapping("/stocks")
+    public ResponseEntity<byte[]> stocks(@RequestParam(required = false) TrendType trend,
+                                         @RequestParam(required = false) Double minEntry,
+                                         @RequestParam(required = false) Double maxEntry,
+                                         @RequestParam(defaultValue = "0") int page,
+                                         @RequestParam(defaultValue = "50") int size,
+                                         WebRequest request) {
+        checkPublished(trend);
+        StockQueryService.View view = stockQueryService.view();
+        if (request.checkNotModified(view.getEtag())) {
+            return null;
+        }
+        return respond(view, stockQueryService.stocks(view, trend, minEntry, maxEntry, page, size));
+    }
+
+    /**
+     * The stocks with the highest entry, e.g. /stocks/top?trend=DOWN&count=10
+     *
+     * @param trend   UP or DOWN
+     * @param count
+     * @param request
+     * @return
+     */
+    @GetMapping("/stocks/top")
+    public ResponseEntity<byte[]> top(@RequestParam(required = false) TrendType trend,
+                                      @RequestParam(defaultValue = "10") int count,
+                                      WebRequest request) {
+        checkPublished(trend);
+        StockQueryService.View view = stockQueryService.view();
+        if (request.checkNotModified(view.getEtag())) {
+            return null;
+        }
+        return respond(view, stockQueryService.top(view, trend, count));
+    }
+
+    /**
+     * The stocks that have got a buy signal since the given time today, e.g. /stocks/notified?since=09:30
+     *
+     * @param since
+     * @param page
+     * @param size
+     * @param request
+     * @return
+     */
+    @GetMapping("/stocks/notified")
+    public ResponseEntity<byte[]> notified(@RequestParam(required = false)
+                                           @DateTimeFormat(iso = DateTimeFormat.ISO.TIME) LocalTime since,
+                                           @RequestParam(defaultValue = "0") int page,
+                                           @RequestParam(defaultValue = "50") int size,
+                                           WebRequest request) {
+        StockQueryService.View view = stockQueryService.view();
+        if (request.checkNotModified(view.getEtag())) {
+            return null;
+        }
+        return respond(view, stockQueryService.notified(view, since, page, size));
+    }
+
+    private void checkPublished(TrendType trend) {
+        if (!StockQueryService.isPublished(trend)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The " + trend + " stocks aren't published");
+        }
+    }
+
+    private ResponseEntity<byte[]> respond(StockQueryService.View view, byte[] body) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .cacheControl(CacheControl.noCache())
+                .eTag(view.getEtag())
+                .body(body);
+    }
+}
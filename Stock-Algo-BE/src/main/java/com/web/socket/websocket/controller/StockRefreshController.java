@@ -1,9 +1,13 @@
 package com.web.socket.websocket.controller;
 
+import com.web.socket.websocket.cluster.LeaderElection;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
 
@@ -12,10 +16,22 @@ import java.io.IOException;
 public class StockRefreshController {
 
     private StockRefreshService stockRefreshService;
+    private LeaderElection leaderElection;
 
     @Autowired
-    public StockRefreshController(StockRefreshService stockRefreshService) {
+    public StockRefreshController(StockRefreshService stockRefreshService, LeaderElection leaderElection) {
         this.stockRefreshService = stockRefreshService;
+        this.leaderElection = leaderElection;
+    }
+
+    /**
+     * The jobs are only started by hand on the node that runs them
+     */
+    @ModelAttribute
+    public void requireLeader() {
+        if (!leaderElection.isLeader()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "This node doesn't run the jobs");
+        }
     }
 
     @GetMapping("/start-stock/savewhenclosing")
@@ -1,67 +1,142 @@
 package com.web.socket.websocket.controller;
 
+import com.web.socket.websocket.cluster.LeadershipEvent;
+import com.web.socket.websocket.model.FetchResult;
+import com.web.socket.websocket.model.Quotes;
 import com.web.socket.websocket.model.Stock;
 import com.web.socket.websocket.model.StockResult;
+import com.web.socket.websocket.model.StockState;
 import com.web.socket.websocket.model.TrendType;
-import com.web.socket.websocket.repository.StockRepository;
-import com.web.socket.websocket.utility.StockComparator;
+import com.web.socket.websocket.model.WarmStart;
+import com.web.socket.websocket.service.PriceHistoryStore;
+import com.web.socket.websocket.service.StockPublisher;
+import com.web.socket.websocket.service.StockStore;
+import com.web.socket.websocket.service.StrategyEngine;
+import com.web.socket.websocket.service.TickJournal;
+import com.web.socket.websocket.service.WarmStartStore;
+import com.web.socket.websocket.utility.ParallelEvaluation;
 import com.web.socket.websocket.utility.StockFetcher;
+import com.web.socket.websocket.utility.SymbolTable;
+import com.web.socket.websocket.utility.TrendIndex;
+import com.web.socket.websocket.utility.TrendRules;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
-import org.springframework.scheduling.annotation.EnableScheduling;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalTime;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-
-import static com.web.socket.websocket.utility.NumberUtilities.NINETY_TWO_PERCENT;
-import static com.web.socket.websocket.utility.NumberUtilities.THREE_PERCENT;
-
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The jobs are the only writers of the stocks and the lists, they hold the job lock so only one of them runs at a time,
+ * whether started by the scheduler or by hand. When a job is done the lists are published as an immutable
+ * StockResult that readers get lock-free from getResult(), they never see the stocks while they're being changed.
+ * The jobs keep the stocks as StockState found by symbol id, the fetched prices come as Quotes,
+ * so a tick neither creates a Stock nor hashes a name for every row.
+ * While this node runs the jobs the stocks are also kept in the warm start, so a restart has them back at once.
+ * The strategies of the StrategyEngine are checked in the same pass over the prices as the live rules
+ */
 @Slf4j
 @Service
-@EnableScheduling
 public class StockRefreshService {
 
+    private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final String WEBSITE = "Website";
+
     private StockFetcher stockFetcher;
-    private SimpMessagingTemplate template;
-    private StockRepository stockRepository;
-    private List<Stock> stocksNotified = new ArrayList<>();
-    List<Stock> upTrend = new ArrayList<>();
-    List<Stock> downTrend = new ArrayList<>();
-    List<Stock> unDecided = new ArrayList<>();
-    List<Stock> combinedLists = new ArrayList<>();
+    private StockPublisher stockPublisher;
+    private StockStore stockStore;
+    private PriceHistoryStore priceHistoryStore;
+    private TickJournal tickJournal;
+    private WarmStartStore warmStartStore;
+    private StrategyEngine strategyEngine;
+    private Timer tickTimer;
+    private Counter tickOverruns;
+    private Counter tickSkipped;
+    private Counter tickUnchanged;
+    private Timer sortTimer;
+    private Timer restoreTimer;
+    private int evaluationBatchSize;
+    private boolean evaluationPending = true;
+    private volatile boolean leading;
+    private ReentrantLock jobLock;
+    private BitSet stocksNotified = new BitSet();
+    TrendIndex trendIndex = new TrendIndex();
+    List<StockState> upTrend = new ArrayList<>();
+    List<StockState> downTrend = new ArrayList<>();
+    Deque<StockState> notifiedSorted = new ArrayDeque<>();
+    private boolean signaled;
+    private Stock[] copies = new Stock[0];
+    private StockState[] copiedStates = new StockState[0];
+    private int[] copiedVersions = new int[0];
+    private AtomicReference<StockResult> result = new AtomicReference<>(
+            new StockResult(Collections.emptyList(), Collections.emptyList(), Collections.emptyList()));
 
     @Autowired
-    public StockRefreshService(StockFetcher stockFetcher, SimpMessagingTemplate template, StockRepository stockRepository) {
+    public StockRefreshService(StockFetcher stockFetcher, StockPublisher stockPublisher, StockStore stockStore,
+                               PriceHistoryStore priceHistoryStore, TickJournal tickJournal,
+                               WarmStartStore warmStartStore, StrategyEngine strategyEngine,
+                               MeterRegistry meterRegistry,
+                               @Value("${stock.evaluation.batch-size:1024}") int evaluationBatchSize) {
         this.stockFetcher = stockFetcher;
-        this.template = template;
-        this.stockRepository = stockRepository;
+        this.stockPublisher = stockPublisher;
+        this.stockStore = stockStore;
+        this.jobLock = stockStore.getJobLock();
+        this.priceHistoryStore = priceHistoryStore;
+        this.tickJournal = tickJournal;
+        this.warmStartStore = warmStartStore;
+        this.strategyEngine = strategyEngine;
+        this.tickTimer = meterRegistry.timer("stock.tick");
+        this.tickOverruns = meterRegistry.counter("stock.tick.overruns");
+        this.tickSkipped = meterRegistry.counter("stock.tick.skipped");
+        this.tickUnchanged = meterRegistry.counter("stock.tick.unchanged");
+        this.sortTimer = meterRegistry.timer("stock.sort");
+        this.restoreTimer = meterRegistry.timer("stock.startup.restore");
+        this.evaluationBatchSize = evaluationBatchSize;
     }
 
     /**
-     * Clear all lists and reset stocks notified
+     * Clear all lists and reset stocks notified.
+     * Like populating and closing it waits for any other job to finish, the jobs never run at the same time
      */
-    @Scheduled(cron = "0 0 6 * * *")
     public void clearLists() {
-        log.info("Clearing Lists");
-        stocksNotified.forEach(stock -> stock.setNotified(false));
-        stocksNotified.clear();
-        upTrend.clear();
-        downTrend.clear();
-        unDecided.clear();
-        combinedLists.clear();
-    }
-
-    /**
-     * Collect all lists unto one
-     */
-    private void combineLists() {
-        combinedLists.clear();
-        combinedLists = Stream.of(upTrend, downTrend, unDecided).flatMap(Collection::stream).collect(Collectors.toList());
+        jobLock.lock();
+        try {
+            log.info("Clearing Lists");
+            // a time of a buy signal in the database is then always of today, which is what a takeover reads
+            stockStore.findAll().stream()
+                    .filter(stock -> stock.isNotified() || stock.getBuySignalMillis() != StockState.NO_SIGNAL)
+                    .forEach(stock -> {
+                        stock.setNotified(false);
+                        stock.setBuySignalMillis(StockState.NO_SIGNAL);
+                        stockStore.markDirty(stock);
+                    });
+            stocksNotified.clear();
+            trendIndex.clear();
+            priceHistoryStore.clear();
+            strategyEngine.clear();
+            tickJournal.rollover();
+            upTrend = Collections.emptyList();
+            downTrend = Collections.emptyList();
+            notifiedSorted.clear();
+            evaluationPending = true;
+            updateResult();
+        } finally {
+            jobLock.unlock();
+        }
+        saveWarmStart();
     }
 
     /**
@@ -70,202 +145,547 @@ public class StockRefreshService {
      * @param existing
      * @return
      */
-    private boolean isNotified(Stock existing) {
-        return stocksNotified.contains(existing) && !existing.isNotified();
+    private boolean isNotified(StockState existing) {
+        return stocksNotified.get(existing.getSymbol()) && !existing.isNotified();
     }
 
     /**
-     * Populating the lists with the data from the database, sorting the stocks in lists after their trend
+     * Loading the stocks from the database into memory and populating the lists with them,
+     * sorting the stocks in lists after their trend
      */
-    @Scheduled(cron = "0 15 6 * * *")
     public void populateLists() {
-        log.info("Populating Lists");
-        List<Stock> newStocks = getStocks();
-        combineLists();
-
-        newStocks.forEach(newStock -> {
-            Optional<Stock> existingStock = stockRepository.findById(newStock.getName());
-
-            existingStock.ifPresent(existing -> {
+        jobLock.lock();
+        try {
+            log.info("Populating Lists");
+            stockStore.load();
+            Quotes quotes = getQuotes();
+
+            for (int i = 0; i < quotes.size(); i++) {
+                StockState existing = stockStore.find(quotes.symbol(i));
+                if (existing != null && !trendIndex.contains(existing) && existing.getTrendType() != null) {
+                    trendIndex.add(existing);
+                }
+            }
+            evaluationPending = true;
+        } finally {
+            jobLock.unlock();
+        }
+    }
 
+    /**
+     * A standalone node recovers when it starts, a clustered node takes over when it's elected.
+     * It runs before the other listeners, so they see the lists taken over.
+     * A node that is no longer the leader writes what it has changed, the scheduled jobs stop by themselves
+     *
+     * @param event
+     */
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onLeadership(LeadershipEvent event) {
+        leading = event.isLeader();
+        if (!event.isLeader()) {
+            stockStore.flush();
+        } else if (event.isTakeover()) {
+            takeOver();
+        } else {
+            recover();
+        }
+    }
 
-                if (!combinedLists.contains(existing)) {
+    /**
+     * Rebuilds the lists when the node starts, before the first tick. The stocks are read from the warm start
+     * if there is one that can't be older than the database, and from the database if there isn't.
+     * The journal of today replays what happened after the warm start was written, so the trends, prices
+     * and buy signals are back without waiting for populating or the next fetch. The buy signals of the warm start are only kept if it was written today.
+     * The journal has no closings, the trends and closing prices are the ones of the warm start or the database,
+     * which is why the warm start is written after every closing. A journaled stock that isn't stored was first seen
+     * at a closing and is added as undecided, as the closing does.
+     * The time it takes is recorded in stock.startup.restore
+     */
+    public void recover() {
+        jobLock.lock();
+        try {
+            long start = System.nanoTime();
+            LocalDate today = LocalDate.now();
+            WarmStart warmStart = warmStartStore.read();
+            long restoredUntil = warmStart != null ? warmStart.getTime() : Long.MIN_VALUE;
+            if (warmStart != null) {
+                stockStore.restore(warmStart.getStocks());
+            } else {
+                stockStore.load();
+            }
+            stockStore.findAll().stream()
+                    .filter(stock -> stock.getTrendType() != null && !trendIndex.contains(stock))
+                    .forEach(trendIndex::add);
+            if (warmStart != null && today.equals(Instant.ofEpochMilli(warmStart.getTime())
+                    .atZone(ZoneId.systemDefault()).toLocalDate())) {
+                warmStart.getStocksNotified().forEach(stock -> {
+                    stocksNotified.set(stock.getSymbol());
+                    notifiedSorted.add(stock);
+                });
+            }
 
-                    TrendType stocksTrendType = existingStock.get().getTrendType();
+            int records = tickJournal.replay(today, new TickJournal.Listener() {
+                @Override
+                public void onTick(int symbol, double price, long time) {
+                    StockState stock = stockStore.find(symbol);
+                    if (stock == null && time >= restoredUntil) {
+                        // first seen at a closing that the warm start was written before
+                        stock = addNewStock(symbol, price);
+                    } else if (stock == null) {
+                        return;
+                    }
+                    priceHistoryStore.record(symbol, time, price);
+                    if (time >= restoredUntil) {
+                        stock.setLastPrice(price);
+                        stock.setEntry();
+                        if (isNotified(stock)) {
+                            stock.setNotified(true);
+                        }
+                        trendIndex.reposition(stock);
+                    }
+                }
 
-                    if (stocksTrendType == TrendType.UP) {
-                        upTrend.add(existingStock.get());
-                    } else if (stocksTrendType == TrendType.DOWN) {
-                        downTrend.add(existingStock.get());
-                    } else if (stocksTrendType == TrendType.UNDECIDED) {
-                        unDecided.add(existingStock.get());
+                @Override
+                public void onSignal(int symbol, long time) {
+                    StockState stock = stockStore.find(symbol);
+                    // like live, the stock is marked as notified on its next tick, not with the signal
+                    if (stock != null && time >= restoredUntil && !stocksNotified.get(symbol)) {
+                        stocksNotified.set(symbol);
+                        stock.setBuySignalMillis(time);
+                        notifiedSorted.addFirst(stock);
                     }
                 }
             });
-        });
+
+            evaluationPending = true;
+            sortLists();
+            convertAndSend();
+            long elapsed = System.nanoTime() - start;
+            restoreTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            log.info("Recovered " + stockStore.findAll().size() + " stocks from the "
+                    + (warmStart != null ? "warm start" : "database") + " and " + records + " journal records in "
+                    + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms");
+        } finally {
+            jobLock.unlock();
+        }
     }
 
     /**
-     * Qualifying the stocks to see if the user shall be notified, if so they are added to the stocks notified list
+     * Writes the stocks and the buy signals to the warm start while this node runs the jobs.
+     * They are encoded under the job lock, so no job changes them meanwhile, and written after it's released
      */
-    @Scheduled(cron = "* * 9-23 * * *")
-    public void live() {
-        log.info("Qualifying Stocks");
-        List<Stock> newStocks = getStocks();
+    public void saveWarmStart() {
+        if (!leading) {
+            return;
+        }
+        byte[] encoded;
+        jobLock.lock();
+        try {
+            encoded = warmStartStore.encode(stockStore.findAll(), notifiedSorted, System.currentTimeMillis());
+        } finally {
+            jobLock.unlock();
+        }
+        warmStartStore.write(encoded);
+    }
 
-        newStocks.forEach(newStock -> {
-            Optional<Stock> existingStock = stockRepository.findById(newStock.getName());
+    /**
+     * Writes the warm start when the application is closed, before the beans are destroyed
+     */
+    @EventListener(ContextClosedEvent.class)
+    public void onClose() {
+        saveWarmStart();
+    }
 
-            existingStock.ifPresent(existing -> {
-                existing.setLastPrice(newStock.getLastPrice());
-                existing.setEntry();
-                if (isNotified(existing)) {
-                    existing.setNotified(true);
+    /**
+     * Rebuilds the lists from the database when this node takes over the jobs from another node of the cluster.
+     * The journal is only of this node, so the stocks are reloaded as the last leader wrote them.
+     * The buy signals of the day are the stocks with a time of a buy signal in the database, since the leader
+     * clears the times every morning, together with the buy signals of the last snapshot replicated from the leader,
+     * which has the ones it published but hadn't flushed yet. They are listed the latest first.
+     * The price histories start over
+     */
+    public void takeOver() {
+        jobLock.lock();
+        try {
+            log.info("Taking over the lists from the database");
+            stocksNotified.clear();
+            trendIndex.clear();
+            priceHistoryStore.clear();
+            notifiedSorted.clear();
+            List<Stock> replicated = stockPublisher.snapshot().getStocksNotified();
+            stockStore.reload();
+
+            // the replicated buy signals come first, so equal times keep the order the leader published them in
+            Set<StockState> signals = new LinkedHashSet<>();
+            for (Stock stock : replicated) {
+                stockStore.find(stock.getName()).ifPresent(existing -> {
+                    if (existing.getBuySignalMillis() == StockState.NO_SIGNAL && stock.getTimeOfBuySignal() != null) {
+                        existing.setBuySignalMillis(StockState.todayMillis(stock.getTimeOfBuySignal()));
+                        existing.setNotified(stock.isNotified());
+                        stockStore.markDirty(existing);
+                    }
+                    if (existing.getBuySignalMillis() != StockState.NO_SIGNAL) {
+                        signals.add(existing);
+                    }
+                });
+            }
+            for (StockState stock : stockStore.findAll()) {
+                if (stock.getTrendType() != null) {
+                    trendIndex.add(stock);
                 }
+                if (stock.getBuySignalMillis() != StockState.NO_SIGNAL) {
+                    signals.add(stock);
+                }
+            }
+            List<StockState> notified = new ArrayList<>(signals);
+            notified.sort(Comparator.comparingLong(StockState::getBuySignalMillis).reversed());
+            notified.forEach(stock -> {
+                stocksNotified.set(stock.getSymbol());
+                notifiedSorted.add(stock);
+            });
 
-                if (existing.isDownTrend() && existing.getEntry() >= 0 && !stocksNotified.contains(existing)) {
-                    existing.setTimeOfBuySignal(LocalTime.now().withNano(0));
+            evaluationPending = true;
+            sortLists();
+            convertAndSend();
+        } finally {
+            jobLock.unlock();
+        }
+    }
 
-                    stocksNotified.add(existing);
-                    stockRepository.save(existing);
+    /**
+     * Qualifying the stocks to see if the user shall be notified, if so they are added to the stocks notified list.
+     * The time of every tick is recorded in stock.tick, ticks longer than a second are counted in stock.tick.overruns.
+     * A tick is skipped if another job is running, so missed ticks are coalesced instead of queued.
+     * If none of the pages has changed since the last tick and nothing else is waiting to be evaluated,
+     * the stocks aren't evaluated again, such ticks are counted in stock.tick.unchanged. With a strategy that has
+     * a window every tick is evaluated, since the window moves on even if the prices don't.
+     * The lists are published before anything is written, the stocks with a buy signal are then flushed by the store
+     * at once instead of waiting for the next flush, so the clients never wait for the database
+     */
+    public void live() {
+        if (!jobLock.tryLock()) {
+            log.info("Skipping tick, another job is running");
+            tickSkipped.increment();
+            return;
+        }
+        try {
+            log.info("Qualifying Stocks");
+            long start = System.nanoTime();
+            FetchResult fetchResult = stockFetcher.fetch();
+            if (!fetchResult.isChanged() && !evaluationPending && !strategyEngine.hasWindows()) {
+                tickUnchanged.increment();
+                tickTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                return;
+            }
+            evaluationPending = false;
+            Quotes quotes = fetchResult.getQuotes();
+
+            long now = System.currentTimeMillis();
+            for (Evaluation evaluation : ParallelEvaluation.evaluate(quotes.size(),
+                    index -> evaluateTick(quotes, index, now), evaluationBatchSize)) {
+                if (evaluation != null) {
+                    applyTick(evaluation, now);
                 }
-            });
-        });
+            }
+            strategyEngine.publish();
 
-        sortLists();
-        convertAndSend();
+            sortLists();
+            convertAndSend();
+            if (signaled) {
+                signaled = false;
+                stockStore.requestFlush();
+            }
+
+            long elapsed = System.nanoTime() - start;
+            tickTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            if (elapsed > TICK_NANOS) {
+                log.info("Tick took " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms");
+                tickOverruns.increment();
+            }
+        } finally {
+            jobLock.unlock();
+        }
     }
 
     /**
-     * Converts and sends the data to the destination /topic/stock
+     * Gets the lists as they were when the last job finished, without waiting for a running job
+     *
+     * @return
      */
-    private void convertAndSend() {
-        this.template.convertAndSend("/topic/stock", new StockResult(upTrend, downTrend, stocksNotified));
+    public StockResult getResult() {
+        return result.get();
     }
 
     /**
-     * Sorting the stocks after data that is most relevant to the user
+     * Updates the price, price history and entry of a stock for a tick and checks for a buy signal.
+     * Runs in parallel with the other stocks, so only the stock itself is changed
+     *
+     * @param quotes
+     * @param index
+     * @param now
+     * @return the evaluation, or null if the stock isn't stored or nothing of it has changed
      */
-    private void sortLists() {
-        downTrend.sort(new StockComparator().reversed());
-        upTrend.sort(new StockComparator());
-        stocksNotified.sort(Comparator.comparing(Stock::getTimeOfBuySignal).reversed());
+    private Evaluation evaluateTick(Quotes quotes, int index, long now) {
+        StockState existing = stockStore.find(quotes.symbol(index));
+        if (existing == null) {
+            return null;
+        }
+
+        int version = existing.getVersion();
+        existing.setLastPrice(quotes.price(index));
+        priceHistoryStore.record(existing.getSymbol(), now, existing.getLastPrice());
+        existing.setEntry();
+        if (isNotified(existing)) {
+            existing.setNotified(true);
+        }
+
+        boolean buySignal = TrendRules.DEFAULT.isBuySignal(existing.getTrendType(), existing.getEntry())
+                && !stocksNotified.get(existing.getSymbol());
+        boolean changed = existing.getVersion() != version;
+        // the strategies without a window only check the stocks that have changed, so a quiet tick costs them little
+        long strategySignals = changed || strategyEngine.hasWindows()
+                ? strategyEngine.evaluate(existing, priceHistoryStore.get(existing.getSymbol()), now, changed) : 0;
+        if (!buySignal && !changed && strategySignals == 0) {
+            return null;
+        }
+        return new Evaluation(existing.getSymbol(), existing.getLastPrice(), existing, null, buySignal, strategySignals);
     }
 
     /**
-     * Receiving the stocks after the filters I've provided
+     * Applies the evaluation of a tick to the lists and the journal, one stock at a time in the order they were fetched
      *
-     * @return
+     * @param evaluation
+     * @param now
+     */
+    private void applyTick(Evaluation evaluation, long now) {
+        StockState existing = evaluation.getExisting();
+        trendIndex.reposition(existing);
+        tickJournal.appendTick(existing.getSymbol(), existing.getLastPrice(), now);
+        if (evaluation.getStrategySignals() != 0) {
+            strategyEngine.apply(existing, evaluation.getStrategySignals(), now);
+        }
+        if (evaluation.isBuySignal()) {
+            existing.setBuySignalMillis(now);
+            tickJournal.appendSignal(existing.getSymbol(), now);
+
+            stocksNotified.set(existing.getSymbol());
+            notifiedSorted.addFirst(existing);
+            stockStore.markDirty(existing);
+            signaled = true;
+            // the stock is marked as notified on the next tick, even if the page hasn't changed by then
+            evaluationPending = true;
+        }
+    }
+
+    /**
+     * Sends what has changed in the lists to the clients
      */
-    private List<Stock> getStocks() {
-        return stockFetcher.getStocks();
+    private void convertAndSend() {
+        stockPublisher.publish(updateResult());
     }
 
     /**
-     * Remove the stocks from the database that are not in the filters anymore
+     * Publishes the current lists as an immutable result. A stock is converted to a new Stock only if its version
+     * has changed since it was last converted, otherwise the previous copy is shared
      *
-     * @param newStocks
+     * @return
      */
-    private void removeStockNotFound(List<Stock> newStocks) {
-        for (Stock stock : stockRepository.findAll()) {
-            if (!newStocks.contains(stock)) {
-                log.info("Removing Stock Not Found: " + stock.getName());
-                stockRepository.delete(stock);
+    private StockResult updateResult() {
+        int symbols = SymbolTable.DEFAULT.size();
+        if (copies.length < symbols) {
+            copies = Arrays.copyOf(copies, symbols);
+            copiedStates = Arrays.copyOf(copiedStates, symbols);
+            copiedVersions = Arrays.copyOf(copiedVersions, symbols);
+        }
+        StockResult updated = new StockResult(copy(upTrend), copy(downTrend), copy(notifiedSorted));
+        result.set(updated);
+        return updated;
+    }
+
+    private List<Stock> copy(Collection<StockState> stocks) {
+        List<Stock> copied = new ArrayList<>(stocks.size());
+        for (StockState stock : stocks) {
+            int symbol = stock.getSymbol();
+            if (copiedStates[symbol] != stock || copiedVersions[symbol] != stock.getVersion()) {
+                copies[symbol] = stock.toStock();
+                copiedStates[symbol] = stock;
+                copiedVersions[symbol] = stock.getVersion();
             }
+            copied.add(copies[symbol]);
         }
+        return Collections.unmodifiableList(copied);
+    }
+
+    /**
+     * Collecting the stocks in the order that is most relevant to the user,
+     * the trends are already ranked by entry and the latest buy signal is always added first.
+     * A trend is only copied out of its ranking again if the ranking has changed
+     */
+    private void sortLists() {
+        sortTimer.record(() -> {
+            downTrend = trendIndex.descending(TrendType.DOWN);
+            upTrend = trendIndex.ascending(TrendType.UP);
+        });
     }
 
     /**
-     * Is the stock eligible to move from undecided OR uptrend list to the downtrend list?
+     * Receiving the prices after the filters I've provided
      *
-     * @param existing
-     * @param newStock
      * @return
      */
-    private boolean isMovingToDowntrend(Stock existing, Stock newStock) {
-        return existing.isUpOrUndecidedTrend() && (existing.getEntry() < 0 || hasDecreasedEightPercent(newStock, existing));
+    private Quotes getQuotes() {
+        return stockFetcher.getQuotes();
     }
 
     /**
-     * Is the stock eligible to move from undecided OR downtrend list to the uptrend list?
+     * Remove the stocks from the database that are not in the filters anymore, all in one delete
      *
-     * @param existing
-     * @param newStock
-     * @return
+     * @param quotes
      */
-    private boolean isMovingToUptrend(Stock existing, Stock newStock) {
-        return hasIncreasedThreePercent(newStock, existing) && existing.isDownOrUndecidedTrend();
+    private void removeStockNotFound(Quotes quotes) {
+        BitSet found = new BitSet();
+        for (int i = 0; i < quotes.size(); i++) {
+            found.set(quotes.symbol(i));
+        }
+        List<StockState> notFound = new ArrayList<>();
+        for (StockState stock : stockStore.findAll()) {
+            if (!found.get(stock.getSymbol())) {
+                log.info("Removing Stock Not Found: " + stock.getName());
+                trendIndex.remove(stock);
+                notFound.add(stock);
+            }
+        }
+        stockStore.removeAll(notFound);
+        notFound.forEach(stock -> priceHistoryStore.remove(stock.getSymbol()));
     }
 
     /**
-     * Fetches all the data when the stock market closes and manipulates data accordingly and then save to the database
+     * Fetches all the data when the stock market closes and manipulates data accordingly and then save to the database.
+     * The lists are sent to the clients first, the stocks are written by the flusher of the store afterwards
      */
-    @Scheduled(cron = "* 15 18 * * *")
     public void saveStockWhenClosing() {
-        log.info("Initiating: Save Stock When Closing");
+        jobLock.lock();
+        try {
+            log.info("Initiating: Save Stock When Closing");
 
-        List<Stock> newStocks = getStocks();
+            FetchResult fetchResult = stockFetcher.fetch();
+            Quotes quotes = fetchResult.getQuotes();
 
-        combineLists();
+            long now = System.currentTimeMillis();
+            ParallelEvaluation.evaluate(quotes.size(), index -> evaluateClosing(quotes, index, now), evaluationBatchSize)
+                    .forEach(evaluation -> applyClosing(evaluation, now));
 
-        newStocks.forEach(newStock -> {
-            Optional<Stock> existingStock = stockRepository.findById(newStock.getName());
+            if (fetchResult.isComplete()) {
+                removeStockNotFound(quotes);
+            } else {
+                log.info("Not all sources were fetched, keeping stocks not found: " + fetchResult.getStatuses());
+            }
+            evaluationPending = true;
+            sortLists();
+            convertAndSend();
+            stockStore.requestFlush();
 
-            existingStock.ifPresentOrElse(existing -> {
-                log.info(existing.getName() + ": Existing Stock is present");
+        } finally {
+            jobLock.unlock();
+        }
+        saveWarmStart();
+    }
 
-                existing.setLastPrice(newStock.getLastPrice());
 
-                existing.setHighestClosingPrice();
-                existing.setLowestClosingPrice();
-                existing.setEntry();
+    /**
+     * Updates the closing prices, price history and entry of an existing stock and decides if it's moving to another trend.
+     * Runs in parallel with the other stocks, so only the stock itself is changed
+     *
+     * @param quotes
+     * @param index
+     * @param now
+     * @return
+     */
+    private Evaluation evaluateClosing(Quotes quotes, int index, long now) {
+        int symbol = quotes.symbol(index);
+        double price = quotes.price(index);
+        StockState existing = stockStore.find(symbol);
+        if (existing == null) {
+            return new Evaluation(symbol, price, null, null, false, 0);
+        }
 
+        existing.setLastPrice(price);
+        priceHistoryStore.record(symbol, now, existing.getLastPrice());
+        existing.setHighestClosingPrice();
+        existing.setLowestClosingPrice();
+        existing.setEntry();
 
-                if (isMovingToUptrend(existing, newStock)) {
-                    log.info("Stock has increased 3%");
-                    log.info("Stock is moving to Uptrend");
-                    moveFromDownToUpTrend(existing);
-                } else if (isMovingToDowntrend(existing, newStock)) {
-                    log.info("Stock has decreased 8% OR Entry below 0");
-                    log.info("Stock is moving to Downtrend");
-                    moveFromUpOrUndecidedToDownTrend(existing);
-                }
-            }, () -> {
-                log.info(newStock.getName() + ": Existing Stock is NOT Present");
-                newStock.setLowestClosingPrice(newStock.getLastPrice());
-                newStock.setHighestClosingPrice(newStock.getLastPrice());
-                newStock.setEntry(0);
-                newStock.setLastPrice(newStock.getLastPrice());
-                newStock.setTrendType(TrendType.UNDECIDED);
-                unDecided.add(newStock);
-            });
-        });
-        combineLists();
+        TrendType move = TrendRules.DEFAULT.transition(existing.getTrendType(), price,
+                existing.getEntry(), existing.getHighestClosingPrice(), existing.getLowestClosingPrice());
+        return new Evaluation(symbol, price, existing, move, false, 0);
+    }
 
-        stockRepository.saveAll(combinedLists);
-        removeStockNotFound(newStocks);
-        convertAndSend();
+    /**
+     * Applies the evaluation of the closing to the lists, the store and the journal,
+     * one stock at a time in the order they were fetched. Stocks that aren't stored yet are added as undecided
+     *
+     * @param evaluation
+     * @param now
+     */
+    private void applyClosing(Evaluation evaluation, long now) {
+        StockState existing = evaluation.getExisting();
+        if (existing == null) {
+            log.info(SymbolTable.DEFAULT.name(evaluation.getSymbol()) + ": Existing Stock is NOT Present");
+            StockState newStock = addNewStock(evaluation.getSymbol(), evaluation.getPrice());
+            priceHistoryStore.record(newStock.getSymbol(), now, newStock.getLastPrice());
+            tickJournal.appendTick(newStock.getSymbol(), newStock.getLastPrice(), now);
+            return;
+        }
 
+        log.info(existing.getName() + ": Existing Stock is present");
+        trendIndex.reposition(existing);
+        tickJournal.appendTick(existing.getSymbol(), existing.getLastPrice(), now);
+        if (evaluation.getMove() == TrendType.UP) {
+            log.info("Stock has increased 3%");
+            log.info("Stock is moving to Uptrend");
+            moveFromDownToUpTrend(existing);
+        } else if (evaluation.getMove() == TrendType.DOWN) {
+            log.info("Stock has decreased 8% OR Entry below 0");
+            log.info("Stock is moving to Downtrend");
+            moveFromUpOrUndecidedToDownTrend(existing);
+        }
+        stockStore.markDirty(existing);
     }
 
+    /**
+     * Adds a stock that isn't stored yet as undecided, with the price as its closing prices
+     *
+     * @param symbol
+     * @param price
+     * @return
+     */
+    private StockState addNewStock(int symbol, double price) {
+        StockState newStock = new StockState(symbol, SymbolTable.DEFAULT.name(symbol));
+        newStock.setWebsite(WEBSITE);
+        newStock.setLowestClosingPrice(price);
+        newStock.setHighestClosingPrice(price);
+        newStock.setEntry(0);
+        newStock.setLastPrice(price);
+        newStock.setTrendType(TrendType.UNDECIDED);
+        stockStore.put(newStock);
+        trendIndex.add(newStock);
+        return newStock;
+    }
 
     /**
      * Moving the stocks from Undecided or Uptrend to the downtrend list
      *
      * @param existing
      */
-    private void moveFromUpOrUndecidedToDownTrend(Stock existing) {
-        if (upTrend.contains(existing)) {
+    private void moveFromUpOrUndecidedToDownTrend(StockState existing) {
+        if (trendIndex.isInTrend(existing, TrendType.UP)) {
             log.info("Moving Stock from Up Trend to Down Trend");
-            existing.setLowestClosingPrice(existing.getLastPrice());
-            upTrend.remove(existing);
         } else {
             log.info("Moving Stock from Undecided Trend to Down Trend");
-            existing.setLowestClosingPrice(existing.getLastPrice());
-            unDecided.remove(existing);
         }
-        existing.setTrendType(TrendType.DOWN);
-        downTrend.add(existing);
+        existing.setLowestClosingPrice(existing.getLastPrice());
+        trendIndex.move(existing, TrendType.DOWN);
     }
 
 
@@ -274,39 +694,29 @@ public class StockRefreshService {
      *
      * @param existing
      */
-    private void moveFromDownToUpTrend(Stock existing) {
-        if (downTrend.contains(existing)) {
+    private void moveFromDownToUpTrend(StockState existing) {
+        if (trendIndex.isInTrend(existing, TrendType.DOWN)) {
             log.info("Moving Stock from Down Trend to Up Trend");
-            existing.setHighestClosingPrice(existing.getLastPrice());
-            downTrend.remove(existing);
         } else {
             log.info("Moving Stock from Undecided Trend to Up Trend");
-            existing.setHighestClosingPrice(existing.getLastPrice());
-            unDecided.remove(existing);
         }
-        existing.setTrendType(TrendType.UP);
-        upTrend.add(existing);
+        existing.setHighestClosingPrice(existing.getLastPrice());
+        trendIndex.move(existing, TrendType.UP);
     }
 
     /**
-     * Has the stock decreased 8 percent?
-     *
-     * @param newStock
-     * @param existing
-     * @return
-     */
-    private boolean hasDecreasedEightPercent(Stock newStock, Stock existing) {
-        return ((newStock.getLastPrice() / existing.getHighestClosingPrice()) < NINETY_TWO_PERCENT);
-    }
-
-    /**
-     * Has the stock increased 3 percent from the lowest closing price?
-     *
-     * @param newStock
-     * @param existingStock
-     * @return
+     * What the evaluation of a fetched price came to, existing is null if the stock isn't stored
+     * and move is null if the stock stays in its trend. The strategy signals have a bit for every strategy
+     * that signals the stock
      */
-    private boolean hasIncreasedThreePercent(Stock newStock, Stock existingStock) {
-        return (newStock.getLastPrice() >= (existingStock.getLowestClosingPrice() * THREE_PERCENT));
+    @lombok.Value
+    private static class Evaluation {
+
+        private int symbol;
+        private double price;
+        private StockState existing;
+        private TrendType move;
+        private boolean buySignal;
+        private long strategySignals;
     }
-}
\ No newline at end of file
+}
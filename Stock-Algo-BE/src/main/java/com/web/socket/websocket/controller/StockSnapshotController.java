@@ -0,0 +1,86 @@
+package com.web.socket.websocket.controller;
+
+import com.web.socket.websocket.model.StockSnapshot;
+import com.web.socket.websocket.model.StockView;
+import com.web.socket.websocket.service.StockPublisher;
+import com.web.socket.websocket.service.StockViews;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.annotation.SendToUser;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
+import org.springframework.stereotype.Controller;
+
+import java.util.List;
+
+@Slf4j
+@Controller
+public class StockSnapshotController {
+
+    private static final String VIEW_PREFIX = "/app/stock/view/";
+
+    private StockPublisher stockPublisher;
+    private StockViews stockViews;
+
+    @Autowired
+    public StockSnapshotController(StockPublisher stockPublisher, StockViews stockViews) {
+        this.stockPublisher = stockPublisher;
+        this.stockViews = stockViews;
+    }
+
+    /**
+     * Replies with the full lists when a client subscribes to /app/stock/snapshot,
+     * after that the client keeps up to date with the deltas on /topic/stock/delta
+     *
+     * @return
+     */
+    @SubscribeMapping("/stock/snapshot")
+    public StockSnapshot snapshot() {
+        return stockPublisher.snapshot();
+    }
+
+    /**
+     * Sends the full lists to /user/queue/stock/snapshot of a client that has missed a delta
+     *
+     * @return
+     */
+    @MessageMapping("/stock/resync")
+    @SendToUser(destinations = "/queue/stock/snapshot", broadcast = false)
+    public StockSnapshot resync() {
+        log.info("Client requested resync");
+        return stockPublisher.snapshot();
+    }
+
+    /**
+     * Replies with a filtered view when a client subscribes to /app/stock/view/{filter},
+     * after that the client gets the view on /topic/stock/{filter} whenever it changes,
+     * or on /user/queue/stock/{filter} for a view of one of its watchlists
+     *
+     * @param destination
+     * @param sessionId
+     * @return the view, or nothing if the filter isn't valid
+     */
+    @SubscribeMapping("/stock/view/**")
+    public StockView view(@Header(SimpMessageHeaderAccessor.DESTINATION_HEADER) String destination,
+                          @Header(SimpMessageHeaderAccessor.SESSION_ID_HEADER) String sessionId) {
+        return destination.startsWith(VIEW_PREFIX)
+                ? stockViews.current(sessionId, destination.substring(VIEW_PREFIX.length())) : null;
+    }
+
+    /**
+     * Sets the names in the watchlist with the given id of the client when it sends them to /app/stock/watch/{id},
+     * the views of the watchlist are sent to the client alone on /user/queue/stock/watch/{id}, at once and on changes
+     *
+     * @param id
+     * @param names
+     * @param sessionId
+     */
+    @MessageMapping("/stock/watch/{id}")
+    public void watch(@DestinationVariable String id, List<String> names,
+                      @Header(SimpMessageHeaderAccessor.SESSION_ID_HEADER) String sessionId) {
+        stockPublisher.watch(sessionId, id, names);
+    }
+}
@@ -0,0 +1,44 @@
+package com.web.socket.websocket.controller;
+
+import com.web.socket.websocket.model.StrategySignal;
+import com.web.socket.websocket.service.StrategyEngine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The buy signals of the strategies run beside the live rules, the latest first.
+ * Like the other queries it's created on the first request
+ */
+@Lazy
+@RestController
+public class StrategyController {
+
+    private StrategyEngine strategyEngine;
+
+    @Autowired
+    public StrategyController(StrategyEngine strategyEngine) {
+        this.strategyEngine = strategyEngine;
+    }
+
+    @GetMapping("/strategies")
+    public Map<String, List<StrategySignal>> strategies() {
+        return strategyEngine.getSignals();
+    }
+
+    @GetMapping("/strategies/{name}")
+    public List<StrategySignal> strategy(@PathVariable String name) {
+        List<StrategySignal> signals = strategyEngine.getSignals().get(name);
+        if (signals == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No strategy " + name);
+        }
+        return signals;
+    }
+}
@@ -0,0 +1,30 @@
+package com.web.socket.websocket.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * The prices of all sources, changed is false if none of the sources have changed since they were last fetched
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class FetchResult {
+
+    private Quotes quotes;
+    private Map<String, FetchStatus> statuses;
+    private boolean changed;
+
+    /**
+     * Did every source answer in time?
+     * Only a complete result can be trusted to tell which stocks are no longer in the filters
+     *
+     * @return
+     */
+    public boolean isComplete() {
+        return statuses.values().stream().allMatch(status -> status == FetchStatus.OK);
+    }
+}
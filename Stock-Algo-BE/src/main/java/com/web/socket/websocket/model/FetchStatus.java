@@ -0,0 +1,8 @@
+package com.web.socket.websocket.model;
+
+public enum FetchStatus {
+    OK,
+    FAILED,
+    TIMED_OUT,
+    BUSY
+}
@@ -0,0 +1,18 @@
+package com.web.socket.websocket.model;
+
+import lombok.Value;
+
+/**
+ * Who holds a lease, or an empty owner if it has been released. The address is where the holder serves its snapshots.
+ * The epoch goes up every time the lease is taken and the renewals every time it's renewed, so the other nodes
+ * can tell it's still renewed without comparing clocks
+ */
+@Value
+public class Lease {
+
+    private String name;
+    private String owner;
+    private String address;
+    private long epoch;
+    private long renewals;
+}
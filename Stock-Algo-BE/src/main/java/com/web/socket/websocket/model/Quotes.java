@@ -0,0 +1,51 @@
+package com.web.socket.websocket.model;
+
+import java.util.Arrays;
+
+/**
+ * The prices of a fetch as two primitive columns of symbol ids and prices, instead of a Stock for every row.
+ * The source adds the prices once and then they are only read, so the same quotes can be handed out on every tick
+ */
+public class Quotes {
+
+    private int[] symbols;
+    private double[] prices;
+    private int size;
+
+    public Quotes() {
+        this(16);
+    }
+
+    public Quotes(int capacity) {
+        this.symbols = new int[Math.max(capacity, 1)];
+        this.prices = new double[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Adds the price of a stock after the others
+     *
+     * @param symbol the id of the stock in the SymbolTable
+     * @param price
+     */
+    public void add(int symbol, double price) {
+        if (size == symbols.length) {
+            symbols = Arrays.copyOf(symbols, size * 2);
+            prices = Arrays.copyOf(prices, size * 2);
+        }
+        symbols[size] = symbol;
+        prices[size] = price;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int symbol(int index) {
+        return symbols[index];
+    }
+
+    public double price(int index) {
+        return prices[index];
+    }
+}
@@ -0,0 +1,13 @@
+package com.web.socket.websocket.model;
+
+import lombok.Value;
+
+/**
+ * The prices of a screener page, changed is false if the page is the same as the last time it was fetched
+ */
+@Value
+public class ScreenerPage {
+
+    private Quotes quotes;
+    private boolean changed;
+}
@@ -1,5 +1,6 @@
 package com.web.socket.websocket.model;
 
+import com.web.socket.websocket.utility.TrendRules;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -11,10 +12,8 @@ import javax.persistence.Id;
 import java.time.LocalTime;
 import java.util.Objects;
 
-import static com.web.socket.websocket.utility.NumberUtilities.*;
-
 @Entity
-@Builder
+@Builder(toBuilder = true)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -34,16 +33,11 @@ public class Stock {
 
     /**
      * Gets the most recent price of the stock,
-     * Calculates the percentage of the entry point, entry >= 0 Means buy
+     * Calculates the percentage of the entry point, entry >= 0 Means buy.
      * Then formats the entry up to 2 decimals.
      */
     public void setEntry() {
-        double calculatedEntry = ((lastPrice / (lowestClosingPrice * THREE_PERCENT))
-                - CONVERT_TO_PERCENT_DIFFERENCE)
-                * CONVERT_TO_WHOLE_NUMBER;
-
-        double formattedEntry = Math.round(calculatedEntry * 100.0) / 100.0;
-        entry = formattedEntry;
+        entry = TrendRules.DEFAULT.entry(lastPrice, lowestClosingPrice);
     }
 
     /**
@@ -78,6 +72,23 @@ public class Stock {
         return trendType == TrendType.DOWN;
     }
 
+    /**
+     * Stock only compares names in equals, this compares everything the clients display
+     *
+     * @param other
+     * @return
+     */
+    public boolean hasSameValues(Stock other) {
+        return Double.compare(lastPrice, other.lastPrice) == 0
+                && Double.compare(highestClosingPrice, other.highestClosingPrice) == 0
+                && Double.compare(lowestClosingPrice, other.lowestClosingPrice) == 0
+                && Double.compare(entry, other.entry) == 0
+                && notified == other.notified
+                && trendType == other.trendType
+                && Objects.equals(website, other.website)
+                && Objects.equals(timeOfBuySignal, other.timeOfBuySignal);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,19 @@
+package com.web.socket.websocket.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class StockDelta {
+
+    private long sequence;
+    private List<Stock> changed;
+    private ListDelta upTrend;
+    private ListDelta downTrend;
+    private ListDelta stocksNotified;
+}
@@ -0,0 +1,18 @@
+package com.web.socket.websocket.model;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * A page of the stocks matching a query, taken from the snapshot with the given sequence
+ */
+@Value
+public class StockPage {
+
+    private long sequence;
+    private int total;
+    private int page;
+    private int size;
+    private List<Stock> stocks;
+}
@@ -1,14 +1,14 @@
 package com.web.socket.websocket.model;
 
-import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import lombok.Value;
 
 import java.util.List;
 
-@Data
-@AllArgsConstructor
-@NoArgsConstructor
+/**
+ * The lists as they were when a job finished. The stocks are copies that are never changed afterwards,
+ * so a result can be read from any thread while the next one is being calculated
+ */
+@Value
 public class StockResult {
 
     private List<Stock> upTrend;
@@ -0,0 +1,17 @@
+package com.web.socket.websocket.model;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Everything that has been published up to the given sequence, never changed once it's created
+ */
+@Value
+public class StockSnapshot {
+
+    private long sequence;
+    private List<Stock> upTrend;
+    private List<Stock> downTrend;
+    private List<Stock> stocksNotified;
+}
@@ -0,0 +1,185 @@
+package com.web.socket.websocket.model;
+
+import com.web.socket.websocket.utility.TrendRules;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+
+/**
+ * A stock as the jobs keep it in memory, in primitive fields and found by its symbol id instead of its name.
+ * The trend is kept as its ordinal and the time of the buy signal in epoch milliseconds.
+ * It's converted to the Stock entity only when it's written to the database or published to the clients.
+ * The version goes up with every change of a value the clients see, so a copy can tell if it's still current
+ */
+@Slf4j
+@Getter
+public class StockState {
+
+    public static final long NO_SIGNAL = Long.MIN_VALUE;
+    private static final TrendType[] TRENDS = TrendType.values();
+    private static final byte NO_TREND = -1;
+
+    private final int symbol;
+    private final String name;
+    private String website;
+    private double lastPrice;
+    private double highestClosingPrice;
+    private double lowestClosingPrice;
+    private double entry;
+    private boolean notified;
+    private byte trend = NO_TREND;
+    private long buySignalMillis = NO_SIGNAL;
+    private int version;
+
+    /**
+     * @param symbol the id of the name in the SymbolTable
+     * @param name   the name of the id, shared with the SymbolTable
+     */
+    public StockState(int symbol, String name) {
+        this.symbol = symbol;
+        this.name = name;
+    }
+
+    /**
+     * The state of a stock loaded from the database, a time of a buy signal is taken as today
+     *
+     * @param symbol
+     * @param name
+     * @param stock
+     * @return
+     */
+    public static StockState of(int symbol, String name, Stock stock) {
+        StockState state = new StockState(symbol, name);
+        state.website = stock.getWebsite();
+        state.lastPrice = stock.getLastPrice();
+        state.highestClosingPrice = stock.getHighestClosingPrice();
+        state.lowestClosingPrice = stock.getLowestClosingPrice();
+        state.entry = stock.getEntry();
+        state.notified = stock.isNotified();
+        state.trend = stock.getTrendType() == null ? NO_TREND : (byte) stock.getTrendType().ordinal();
+        if (stock.getTimeOfBuySignal() != null) {
+            state.buySignalMillis = todayMillis(stock.getTimeOfBuySignal());
+        }
+        return state;
+    }
+
+    /**
+     * Converts a time of a buy signal, which is always of today, to epoch milliseconds
+     *
+     * @param time
+     * @return
+     */
+    public static long todayMillis(LocalTime time) {
+        return LocalDate.now().atTime(time).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Converts the state to the entity, as a new object that isn't changed by the jobs
+     *
+     * @return
+     */
+    public Stock toStock() {
+        return Stock.builder()
+                .name(name)
+                .website(website)
+                .lastPrice(lastPrice)
+                .highestClosingPrice(highestClosingPrice)
+                .lowestClosingPrice(lowestClosingPrice)
+                .entry(entry)
+                .notified(notified)
+                .trendType(getTrendType())
+                .timeOfBuySignal(buySignalMillis == NO_SIGNAL ? null
+                        : LocalTime.ofInstant(Instant.ofEpochMilli(buySignalMillis), ZoneId.systemDefault()).withNano(0))
+                .build();
+    }
+
+    public TrendType getTrendType() {
+        return trend == NO_TREND ? null : TRENDS[trend];
+    }
+
+    public void setTrendType(TrendType trendType) {
+        byte changed = trendType == null ? NO_TREND : (byte) trendType.ordinal();
+        if (trend != changed) {
+            trend = changed;
+            version++;
+        }
+    }
+
+    public void setWebsite(String website) {
+        this.website = website;
+        version++;
+    }
+
+    public void setLastPrice(double lastPrice) {
+        if (Double.compare(this.lastPrice, lastPrice) != 0) {
+            this.lastPrice = lastPrice;
+            version++;
+        }
+    }
+
+    public void setHighestClosingPrice(double highestClosingPrice) {
+        if (Double.compare(this.highestClosingPrice, highestClosingPrice) != 0) {
+            this.highestClosingPrice = highestClosingPrice;
+            version++;
+        }
+    }
+
+    public void setLowestClosingPrice(double lowestClosingPrice) {
+        if (Double.compare(this.lowestClosingPrice, lowestClosingPrice) != 0) {
+            this.lowestClosingPrice = lowestClosingPrice;
+            version++;
+        }
+    }
+
+    public void setEntry(double entry) {
+        if (Double.compare(this.entry, entry) != 0) {
+            this.entry = entry;
+            version++;
+        }
+    }
+
+    public void setNotified(boolean notified) {
+        if (this.notified != notified) {
+            this.notified = notified;
+            version++;
+        }
+    }
+
+    public void setBuySignalMillis(long buySignalMillis) {
+        if (this.buySignalMillis != buySignalMillis) {
+            this.buySignalMillis = buySignalMillis;
+            version++;
+        }
+    }
+
+    /**
+     * Calculates the entry from the last price and the lowest closing price
+     */
+    public void setEntry() {
+        setEntry(TrendRules.DEFAULT.entry(lastPrice, lowestClosingPrice));
+    }
+
+    /**
+     * Setting the lowest closing price if the last price is lower
+     */
+    public void setLowestClosingPrice() {
+        if (lowestClosingPrice > lastPrice) {
+            log.info("Setting Lowest Closing Price");
+            setLowestClosingPrice(lastPrice);
+        }
+    }
+
+    /**
+     * Setting the highest closing price if the last price is higher
+     */
+    public void setHighestClosingPrice() {
+        if (highestClosingPrice < lastPrice) {
+            log.info("Setting Highest Closing Price");
+            setHighestClosingPrice(lastPrice);
+        }
+    }
+}
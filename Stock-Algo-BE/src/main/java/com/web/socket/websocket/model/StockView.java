@@ -0,0 +1,16 @@
+package com.web.socket.websocket.model;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * All the stocks of a filtered view as they were when the delta with the given sequence was published,
+ * never changed once it's created
+ */
+@Value
+public class StockView {
+
+    private long sequence;
+    private List<Stock> stocks;
+}
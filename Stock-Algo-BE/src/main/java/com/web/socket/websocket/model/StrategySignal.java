@@ -0,0 +1,17 @@
+package com.web.socket.websocket.model;
+
+import lombok.Value;
+
+import java.time.LocalTime;
+
+/**
+ * A buy signal of a strategy, with the price and the entry of the stock when it was given
+ */
+@Value
+public class StrategySignal {
+
+    private String name;
+    private LocalTime timeOfBuySignal;
+    private double price;
+    private double entry;
+}
@@ -0,0 +1,18 @@
+package com.web.socket.websocket.model;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * The stocks and the buy signals as the jobs had them when the warm start was written, with the epoch of the node
+ * that wrote it, read back as new stocks that nothing else refers to yet
+ */
+@Value
+public class WarmStart {
+
+    private long time;
+    private long epoch;
+    private List<StockState> stocks;
+    private List<StockState> stocksNotified;
+}
@@ -0,0 +1,118 @@
+package com.web.socket.websocket.repository;
+
+import com.web.socket.websocket.model.Lease;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Leases kept in the database the nodes share, with plain JDBC so taking a lease is a single conditional statement.
+ * The table is created by the nodes that use it, a standalone node never touches it
+ */
+@Repository
+public class LeaseRepository {
+
+    private static final String CREATE = "CREATE TABLE IF NOT EXISTS stock_lease (name VARCHAR(64) NOT NULL PRIMARY KEY, "
+            + "owner VARCHAR(255) NOT NULL, address VARCHAR(255), epoch BIGINT NOT NULL, renewals BIGINT NOT NULL)";
+    private static final String INSERT = "INSERT INTO stock_lease (name, owner, address, epoch, renewals) VALUES (?, ?, ?, 1, 0)";
+    private static final String RENEW = "UPDATE stock_lease SET address = ?, renewals = renewals + 1 "
+            + "WHERE name = ? AND owner = ? AND epoch = ?";
+    private static final String TAKE = "UPDATE stock_lease SET owner = ?, address = ?, epoch = epoch + 1, renewals = renewals + 1 "
+            + "WHERE name = ? AND epoch = ? AND renewals = ?";
+    private static final String FIND = "SELECT name, owner, address, epoch, renewals FROM stock_lease WHERE name = ?";
+    private static final String HELD = "SELECT owner, epoch FROM stock_lease WHERE name = ? FOR UPDATE";
+    private static final String RELEASE = "UPDATE stock_lease SET owner = '', address = NULL, renewals = renewals + 1 "
+            + "WHERE name = ? AND owner = ? AND epoch = ?";
+
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public LeaseRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void createTable() {
+        jdbcTemplate.execute(CREATE);
+    }
+
+    /**
+     * Takes a lease that has never been taken, with epoch 1
+     *
+     * @param name
+     * @param owner
+     * @param address
+     * @return false if another node took it first
+     */
+    public boolean insert(String name, String owner, String address) {
+        try {
+            return jdbcTemplate.update(INSERT, name, owner, address) > 0;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Renews the lease, which only succeeds if the owner still holds it with the same epoch
+     *
+     * @param name
+     * @param owner
+     * @param address
+     * @param epoch
+     * @return true if the owner still holds the lease
+     */
+    public boolean renew(String name, String owner, String address, long epoch) {
+        return jdbcTemplate.update(RENEW, address, name, owner, epoch) > 0;
+    }
+
+    /**
+     * Takes the lease with the next epoch, which only succeeds if it hasn't been taken or renewed since it was observed
+     *
+     * @param name
+     * @param owner
+     * @param address
+     * @param observed the lease as it was found when it was seen to have expired
+     * @return true if the owner now holds the lease with the epoch after the observed one
+     */
+    public boolean take(String name, String owner, String address, Lease observed) {
+        return jdbcTemplate.update(TAKE, owner, address, name, observed.getEpoch(), observed.getRenewals()) > 0;
+    }
+
+    /**
+     * @param name
+     * @return the lease, or null if it has never been taken
+     */
+    public Lease find(String name) {
+        List<Lease> leases = jdbcTemplate.query(FIND, (rs, row) -> new Lease(rs.getString("name"),
+                rs.getString("owner"), rs.getString("address"), rs.getLong("epoch"), rs.getLong("renewals")), name);
+        return leases.isEmpty() ? null : leases.get(0);
+    }
+
+    /**
+     * Does the owner still hold the lease with the epoch? Called in a transaction, the lease is locked until it ends
+     * so it can't be taken by another node before what's written in the transaction is committed
+     *
+     * @param name
+     * @param owner
+     * @param epoch
+     * @return
+     */
+    public boolean isHeld(String name, String owner, long epoch) {
+        List<Boolean> held = jdbcTemplate.query(HELD, (rs, row) -> owner.equals(rs.getString("owner"))
+                && rs.getLong("epoch") == epoch, name);
+        return !held.isEmpty() && held.get(0);
+    }
+
+    /**
+     * Releases the lease if the owner holds it, so another node can take it without waiting for it to expire
+     *
+     * @param name
+     * @param owner
+     * @param epoch
+     */
+    public void release(String name, String owner, long epoch) {
+        jdbcTemplate.update(RELEASE, name, owner, epoch);
+    }
+}
@@ -1,10 +1,26 @@
 package com.web.socket.websocket.repository;
 
 import com.web.socket.websocket.model.Stock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
 
 @Repository
-public interface StockRepository extends CrudRepository<Stock, String> {
+public interface StockRepository extends CrudRepository<Stock, String>, StockRepositoryCustom {
 
-}
\ No newline at end of file
+    /**
+     * Deletes all the given stocks in one statement
+     *
+     * @param names
+     * @return the number of deleted stocks
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from Stock s where s.name in :names")
+    int deleteByNames(@Param("names") Collection<String> names);
+}
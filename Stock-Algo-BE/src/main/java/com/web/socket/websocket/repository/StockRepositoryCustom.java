@@ -0,0 +1,15 @@
+package com.web.socket.websocket.repository;
+
+import com.web.socket.websocket.model.Stock;
+
+import java.util.Collection;
+
+public interface StockRepositoryCustom {
+
+    /**
+     * Inserts the stocks that don't exist and updates the ones that do, in JDBC batches
+     *
+     * @param stocks
+     */
+    void upsertAll(Collection<Stock> stocks);
+}
@@ -0,0 +1,91 @@
+package com.web.socket.websocket.repository;
+
+import com.web.socket.websocket.model.Stock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Types;
+import java.util.*;
+
+/**
+ * Writes stocks with plain JDBC, since saving through JPA first selects every stock to merge it.
+ * The columns are the ones Hibernate generates for Stock, the trend type is stored by its ordinal.
+ * Only standard SQL is used, so it runs the same on MySQL as on H2: every batch finds which of its stocks
+ * exist with one select, updates those and inserts the others
+ */
+public class StockRepositoryImpl implements StockRepositoryCustom {
+
+    private static final String EXISTING = "SELECT name FROM stock WHERE name IN (%s)";
+    private static final String UPDATE = "UPDATE stock SET website = ?, last_price = ?, highest_closing_price = ?, "
+            + "lowest_closing_price = ?, entry = ?, notified = ?, trend_type = ?, time_of_buy_signal = ? WHERE name = ?";
+    private static final String INSERT = "INSERT INTO stock (website, last_price, highest_closing_price, "
+            + "lowest_closing_price, entry, notified, trend_type, time_of_buy_signal, name) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private JdbcTemplate jdbcTemplate;
+    private int batchSize;
+
+    @Autowired
+    public StockRepositoryImpl(JdbcTemplate jdbcTemplate, @Value("${stock.store.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    @Transactional
+    public void upsertAll(Collection<Stock> stocks) {
+        List<Stock> all = new ArrayList<>(stocks);
+        for (int from = 0; from < all.size(); from += batchSize) {
+            List<Stock> batch = all.subList(from, Math.min(from + batchSize, all.size()));
+            Set<String> existing = existing(batch);
+            List<Stock> updated = new ArrayList<>(existing.size());
+            List<Stock> inserted = new ArrayList<>(batch.size() - existing.size());
+            batch.forEach(stock -> (existing.contains(stock.getName()) ? updated : inserted).add(stock));
+            if (!updated.isEmpty()) {
+                jdbcTemplate.batchUpdate(UPDATE, updated, updated.size(), StockRepositoryImpl::setValues);
+            }
+            if (!inserted.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT, inserted, inserted.size(), StockRepositoryImpl::setValues);
+            }
+        }
+    }
+
+    private Set<String> existing(List<Stock> batch) {
+        String[] names = batch.stream().map(Stock::getName).toArray(String[]::new);
+        String placeholders = String.join(", ", Collections.nCopies(names.length, "?"));
+        return new HashSet<>(jdbcTemplate.queryForList(String.format(EXISTING, placeholders), String.class,
+                (Object[]) names));
+    }
+
+    /**
+     * Sets the values of the stock in the order of both UPDATE and INSERT, with the name last
+     *
+     * @param statement
+     * @param stock
+     * @throws SQLException
+     */
+    private static void setValues(PreparedStatement statement, Stock stock) throws SQLException {
+        statement.setString(1, stock.getWebsite());
+        statement.setDouble(2, stock.getLastPrice());
+        statement.setDouble(3, stock.getHighestClosingPrice());
+        statement.setDouble(4, stock.getLowestClosingPrice());
+        statement.setDouble(5, stock.getEntry());
+        statement.setBoolean(6, stock.isNotified());
+        if (stock.getTrendType() != null) {
+            statement.setInt(7, stock.getTrendType().ordinal());
+        } else {
+            statement.setNull(7, Types.INTEGER);
+        }
+        if (stock.getTimeOfBuySignal() != null) {
+            statement.setTime(8, Time.valueOf(stock.getTimeOfBuySignal()));
+        } else {
+            statement.setNull(8, Types.TIME);
+        }
+        statement.setString(9, stock.getName());
+    }
+}
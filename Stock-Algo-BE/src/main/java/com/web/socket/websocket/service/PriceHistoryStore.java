@@ -0,0 +1,92 @@
+package com.web.socket.websocket.service;
+
+import com.web.socket.websocket.utility.PriceHistory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Holds the intraday prices of every stock in memory, indexed by symbol id, the history is cleared every morning
+ * with the lists. The prices are recorded while the stocks are evaluated in parallel, so a history is found
+ * without locking and only created under the lock. The histories are read by the strategies of the stock
+ * while it's evaluated. The number of stocks with a history is exposed as stock.history.symbols
+ */
+@Service
+public class PriceHistoryStore {
+
+    private int capacity;
+    private volatile AtomicReferenceArray<PriceHistory> histories = new AtomicReferenceArray<>(1024);
+    private AtomicInteger symbols = new AtomicInteger();
+
+    @Autowired
+    public PriceHistoryStore(MeterRegistry meterRegistry, @Value("${stock.history.capacity:4096}") int capacity) {
+        this.capacity = capacity;
+        meterRegistry.gauge("stock.history.symbols", symbols);
+    }
+
+    /**
+     * Records the price of the stock at the given time
+     *
+     * @param symbol
+     * @param time   in epoch milliseconds
+     * @param price
+     */
+    public void record(int symbol, long time, double price) {
+        AtomicReferenceArray<PriceHistory> current = histories;
+        PriceHistory history = symbol < current.length() ? current.get(symbol) : null;
+        if (history == null) {
+            history = create(symbol);
+        }
+        history.append(time, price);
+    }
+
+    /**
+     * Gets the history of the stock without locking, for the stocks being evaluated
+     *
+     * @param symbol
+     * @return the history, or null if there are no prices
+     */
+    public PriceHistory get(int symbol) {
+        AtomicReferenceArray<PriceHistory> current = histories;
+        return symbol < current.length() ? current.get(symbol) : null;
+    }
+
+    public synchronized void remove(int symbol) {
+        if (symbol < histories.length() && histories.getAndSet(symbol, null) != null) {
+            symbols.decrementAndGet();
+        }
+    }
+
+    public synchronized void clear() {
+        histories = new AtomicReferenceArray<>(histories.length());
+        symbols.set(0);
+    }
+
+    /**
+     * Creates the history of the stock unless another thread just did, growing the index if it's too small
+     *
+     * @param symbol
+     * @return
+     */
+    private synchronized PriceHistory create(int symbol) {
+        if (symbol >= histories.length()) {
+            AtomicReferenceArray<PriceHistory> grown =
+                    new AtomicReferenceArray<>(Math.max(symbol + 1, histories.length() * 2));
+            for (int i = 0; i < histories.length(); i++) {
+                grown.set(i, histories.get(i));
+            }
+            histories = grown;
+        }
+        PriceHistory history = histories.get(symbol);
+        if (history == null) {
+            history = new PriceHistory(capacity);
+            histories.set(symbol, history);
+            symbols.incrementAndGet();
+        }
+        return history;
+    }
+}
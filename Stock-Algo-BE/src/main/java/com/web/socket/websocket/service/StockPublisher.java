@@ -0,0 +1,213 @@
+package com.web.socket.websocket.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.web.socket.websocket.model.*;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Publishes the lists to the clients. Publishing is done by the job that changed the lists, one at a time,
+ * while the snapshot is read lock-free from any thread.
+ * Along with the delta the filtered views that have changed are sent, each to its own destination,
+ * and the views of the watchlists to the sessions they belong to
+ */
+@Slf4j
+@Service
+public class StockPublisher {
+
+    public static final String DELTA_DESTINATION = "/topic/stock/delta";
+
+    private SimpMessagingTemplate template;
+    private ObjectMapper objectMapper;
+    private StockViews stockViews;
+    private Timer publishTimer;
+    private DistributionSummary publishedBytes;
+    private Counter viewsSent;
+    private long sequence;
+    private Map<String, Stock> published = new HashMap<>();
+    private List<String> upTrend = new ArrayList<>();
+    private List<String> downTrend = new ArrayList<>();
+    private List<String> stocksNotified = new ArrayList<>();
+    private List<Consumer<StockSnapshot>> listeners = new CopyOnWriteArrayList<>();
+    private AtomicReference<StockSnapshot> snapshot = new AtomicReference<>(
+            new StockSnapshot(0, Collections.emptyList(), Collections.emptyList(), Collections.emptyList()));
+
+    @Autowired
+    public StockPublisher(SimpMessagingTemplate template, ObjectMapper objectMapper, StockViews stockViews,
+                          MeterRegistry meterRegistry) {
+        this.template = template;
+        this.objectMapper = objectMapper;
+        this.stockViews = stockViews;
+        this.publishTimer = meterRegistry.timer("stock.publish");
+        this.publishedBytes = meterRegistry.summary("stock.publish.bytes");
+        this.viewsSent = meterRegistry.counter("stock.views.sent");
+    }
+
+    /**
+     * Compares the lists with what was published last and sends only the differences
+     * to the destination /topic/stock/delta. Nothing is sent if nothing has changed.
+     * The stocks of the result are never changed, so they are kept as they are instead of being copied
+     *
+     * @param result
+     */
+    public synchronized void publish(StockResult result) {
+        Map<String, Stock> current = new LinkedHashMap<>();
+        Stream.of(result.getUpTrend(), result.getDownTrend(), result.getStocksNotified())
+                .flatMap(Collection::stream)
+                .forEach(stock -> current.putIfAbsent(stock.getName(), stock));
+
+        List<Stock> changed = new ArrayList<>();
+        current.forEach((name, stock) -> {
+            Stock last = published.get(name);
+            if (last == null || (last != stock && !last.hasSameValues(stock))) {
+                changed.add(stock);
+            }
+            published.put(name, stock);
+        });
+        published.keySet().retainAll(current.keySet());
+
+        List<String> newUpTrend = names(result.getUpTrend());
+        List<String> newDownTrend = names(result.getDownTrend());
+        List<String> newStocksNotified = names(result.getStocksNotified());
+        ListDelta upTrendDelta = difference(upTrend, newUpTrend);
+        ListDelta downTrendDelta = difference(downTrend, newDownTrend);
+        ListDelta stocksNotifiedDelta = difference(stocksNotified, newStocksNotified);
+        upTrend = newUpTrend;
+        downTrend = newDownTrend;
+        stocksNotified = newStocksNotified;
+
+        if (changed.isEmpty() && upTrendDelta.isEmpty() && downTrendDelta.isEmpty() && stocksNotifiedDelta.isEmpty()) {
+            return;
+        }
+
+        sequence++;
+        snapshot.set(new StockSnapshot(sequence, result.getUpTrend(), result.getDownTrend(), result.getStocksNotified()));
+        send(DELTA_DESTINATION, new StockDelta(sequence, changed, upTrendDelta, downTrendDelta, stocksNotifiedDelta));
+        stockViews.update(result, sequence).forEach((destination, view) -> {
+            send(destination, view);
+            viewsSent.increment();
+        });
+        stockViews.updateWatchlists().forEach(this::sendToSession);
+        listeners.forEach(listener -> listener.accept(snapshot.get()));
+    }
+
+    /**
+     * Sets a watchlist of the session and sends it the views of the watchlist it's subscribed to at once.
+     * It's done under the same lock as publishing, so the views can't be sent after newer ones
+     *
+     * @param sessionId
+     * @param id
+     * @param names
+     * @return false if the watchlist can't be added
+     */
+    public synchronized boolean watch(String sessionId, String id, Collection<String> names) {
+        Map<String, StockView> views = stockViews.watch(sessionId, id, names);
+        if (views == null) {
+            return false;
+        }
+        sendToSession(sessionId, views);
+        return true;
+    }
+
+    /**
+     * Adds a listener that gets every new snapshot right after it's published, on the thread publishing it
+     *
+     * @param listener
+     */
+    public void addListener(Consumer<StockSnapshot> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Serializes the payload to JSON once and sends the bytes,
+     * the broker then hands the same bytes to every subscriber instead of converting it for each of them.
+     * The time it takes and the size are recorded in stock.publish and stock.publish.bytes
+     *
+     * @param destination
+     * @param payload
+     */
+    private void send(String destination, Object payload) {
+        send(destination, null, payload);
+    }
+
+    /**
+     * Sends the views to the session only, on its user destinations
+     *
+     * @param sessionId
+     * @param views     by their destination in the session
+     */
+    private void sendToSession(String sessionId, Map<String, StockView> views) {
+        views.forEach((destination, view) -> {
+            send("/user/" + sessionId + destination, sessionId, view);
+            viewsSent.increment();
+        });
+    }
+
+    private void send(String destination, String sessionId, Object payload) {
+        long start = System.nanoTime();
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(payload);
+        } catch (JsonProcessingException e) {
+            log.info("Error serializing " + payload.getClass().getSimpleName() + ": " + e.getMessage());
+            return;
+        }
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create();
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        if (sessionId != null) {
+            accessor.setSessionId(sessionId);
+        }
+        accessor.setLeaveMutable(true);
+        template.send(destination, MessageBuilder.createMessage(json, accessor.getMessageHeaders()));
+        publishTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        publishedBytes.record(json.length);
+    }
+
+    /**
+     * Gets everything that has been published so far, for clients that subscribe or have missed a delta.
+     * It's set before the delta is sent, a client that gets both ignores the delta by its sequence
+     *
+     * @return
+     */
+    public StockSnapshot snapshot() {
+        return snapshot.get();
+    }
+
+    private List<String> names(List<Stock> stocks) {
+        return stocks.stream().map(Stock::getName).collect(Collectors.toList());
+    }
+
+    /**
+     * Gets the names that have been added to and removed from a list
+     *
+     * @param previous
+     * @param current
+     * @return
+     */
+    private ListDelta difference(List<String> previous, List<String> current) {
+        Set<String> previousNames = new HashSet<>(previous);
+        Set<String> currentNames = new HashSet<>(current);
+        List<String> added = current.stream().filter(name -> !previousNames.contains(name)).collect(Collectors.toList());
+        List<String> removed = previous.stream().filter(name -> !currentNames.contains(name)).collect(Collectors.toList());
+        return new ListDelta(added, removed);
+    }
+}
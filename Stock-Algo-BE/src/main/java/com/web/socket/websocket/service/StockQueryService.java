@@ -0,0 +1,258 @@
+package com.web.socket.websocket.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.web.socket.websocket.model.Stock;
+import com.web.socket.websocket.model.StockPage;
+import com.web.socket.websocket.model.StockSnapshot;
+import com.web.socket.websocket.model.TrendType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Answers the queries of the REST API from the last published snapshot, never from the database.
+ * Like the controller it's created on the first request, from then on the view of every snapshot is built
+ * when it's published, with the bodies most clients poll already serialized: the first page of all stocks
+ * and of each trend, the top of all stocks and of each trend, and the first page of the buy signals.
+ * The body of any other query is serialized the first time it's asked for and kept with the view,
+ * at most stock.query.cache-size of them. The ETag of a view is its sequence, so a client polling with
+ * If-None-Match gets a 304 without anything being calculated.
+ * How the bodies were served is counted in stock.query.bodies, tagged with the result.
+ * Only the trends that are published can be queried, the undecided stocks aren't
+ */
+@Lazy
+@Service
+public class StockQueryService {
+
+    public static final int MAX_PAGE_SIZE = 500;
+    // the defaults of the controller, the bodies with them are serialized when a snapshot is published
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int DEFAULT_TOP = 10;
+    private static final TrendType[] PUBLISHED_TRENDS = {null, TrendType.UP, TrendType.DOWN};
+
+    private StockPublisher stockPublisher;
+    private ObjectMapper objectMapper;
+    private int cacheSize;
+    private Counter cached;
+    private Counter computed;
+    private String startId = Long.toString(System.currentTimeMillis(), 36);
+    private volatile View view;
+
+    @Autowired
+    public StockQueryService(StockPublisher stockPublisher, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                             @Value("${stock.query.cache-size:64}") int cacheSize) {
+        this.stockPublisher = stockPublisher;
+        this.objectMapper = objectMapper;
+        this.cacheSize = cacheSize;
+        this.cached = meterRegistry.counter("stock.query.bodies", "result", "cached");
+        this.computed = meterRegistry.counter("stock.query.bodies", "result", "computed");
+        this.view = new View(stockPublisher.snapshot(), startId);
+        stockPublisher.addListener(this::precompute);
+    }
+
+    /**
+     * Can the stocks of the trend be queried? All of them can, and the trends that are published
+     *
+     * @param trendType
+     * @return
+     */
+    public static boolean isPublished(TrendType trendType) {
+        return trendType == null || trendType == TrendType.UP || trendType == TrendType.DOWN;
+    }
+
+    /**
+     * Gets the view of the last published snapshot, building it if the snapshot is newer than the last view
+     *
+     * @return
+     */
+    public View view() {
+        View current = view;
+        if (current.sequence != stockPublisher.snapshot().getSequence()) {
+            current = update();
+        }
+        return current;
+    }
+
+    private synchronized View update() {
+        StockSnapshot snapshot = stockPublisher.snapshot();
+        if (snapshot.getSequence() > view.sequence) {
+            view = new View(snapshot, startId);
+        }
+        return view;
+    }
+
+    /**
+     * Builds the view of a snapshot that has just been published and serializes the bodies most clients poll,
+     * on the thread publishing it
+     *
+     * @param snapshot
+     */
+    private void precompute(StockSnapshot snapshot) {
+        View built = new View(snapshot, startId);
+        for (TrendType trendType : PUBLISHED_TRENDS) {
+            stocks(built, trendType, null, null, 0, DEFAULT_PAGE_SIZE);
+            top(built, trendType, DEFAULT_TOP);
+        }
+        notified(built, null, 0, DEFAULT_PAGE_SIZE);
+        synchronized (this) {
+            if (built.sequence > view.sequence) {
+                view = built;
+            }
+        }
+    }
+
+    /**
+     * The stocks of a trend, or all of them, in the order the clients show them,
+     * with an entry between minEntry and maxEntry if they are given
+     *
+     * @param view
+     * @param trendType null, UP or DOWN
+     * @param minEntry
+     * @param maxEntry
+     * @param page
+     * @param size
+     * @return the page as JSON
+     */
+    public byte[] stocks(View view, TrendType trendType, Double minEntry, Double maxEntry, int page, int size) {
+        String key = "stocks|" + trendType + "|" + minEntry + "|" + maxEntry + "|" + page + "|" + size;
+        return body(view, key, () -> {
+            Stream<Stock> stocks = view.ofTrend(trendType).stream();
+            if (minEntry != null) {
+                stocks = stocks.filter(stock -> stock.getEntry() >= minEntry);
+            }
+            if (maxEntry != null) {
+                stocks = stocks.filter(stock -> stock.getEntry() <= maxEntry);
+            }
+            return page(view, stocks.collect(Collectors.toList()), page, size);
+        });
+    }
+
+    /**
+     * The stocks with the highest entry, of a trend or all of them
+     *
+     * @param view
+     * @param trendType null, UP or DOWN
+     * @param count
+     * @return the stocks as a page of the given count
+     */
+    public byte[] top(View view, TrendType trendType, int count) {
+        String key = "top|" + trendType + "|" + count;
+        return body(view, key, () -> {
+            Predicate<Stock> inTrend = stock -> trendType == null || stock.getTrendType() == trendType;
+            return page(view, view.byEntry.stream().filter(inTrend).collect(Collectors.toList()), 0, count);
+        });
+    }
+
+    /**
+     * The stocks that have got a buy signal at or after the given time today, the latest first
+     *
+     * @param view
+     * @param since
+     * @param page
+     * @param size
+     * @return
+     */
+    public byte[] notified(View view, LocalTime since, int page, int size) {
+        String key = "notified|" + since + "|" + page + "|" + size;
+        return body(view, key, () -> page(view, view.stocksNotified.stream()
+                .filter(stock -> since == null
+                        || (stock.getTimeOfBuySignal() != null && !stock.getTimeOfBuySignal().isBefore(since)))
+                .collect(Collectors.toList()), page, size));
+    }
+
+    private StockPage page(View view, List<Stock> matching, int page, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        int pageNumber = Math.max(0, page);
+        int from = (int) Math.min((long) pageNumber * pageSize, matching.size());
+        int to = Math.min(from + pageSize, matching.size());
+        return new StockPage(view.sequence, matching.size(), pageNumber, pageSize,
+                Collections.unmodifiableList(new ArrayList<>(matching.subList(from, to))));
+    }
+
+    /**
+     * Gets the body of a query from the view, serializing it only the first time it's asked for
+     *
+     * @param view
+     * @param key
+     * @param query
+     * @return
+     */
+    private byte[] body(View view, String key, Supplier<StockPage> query) {
+        byte[] body = view.bodies.get(key);
+        if (body != null) {
+            cached.increment();
+            return body;
+        }
+        computed.increment();
+        try {
+            body = objectMapper.writeValueAsBytes(query.get());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Error serializing query " + key, e);
+        }
+        if (view.bodies.size() < cacheSize) {
+            view.bodies.putIfAbsent(key, body);
+        }
+        return body;
+    }
+
+    /**
+     * The lists of a snapshot arranged for the queries, never changed once it's built except for the bodies it keeps
+     */
+    public static class View {
+
+        private final long sequence;
+        private final String etag;
+        private final List<Stock> upTrend;
+        private final List<Stock> downTrend;
+        private final List<Stock> stocksNotified;
+        private final List<Stock> all;
+        private final List<Stock> byEntry;
+        private final Map<String, byte[]> bodies = new ConcurrentHashMap<>();
+
+        View(StockSnapshot snapshot, String startId) {
+            this.sequence = snapshot.getSequence();
+            this.etag = "\"" + startId + "-" + sequence + "\"";
+            this.upTrend = snapshot.getUpTrend();
+            this.downTrend = snapshot.getDownTrend();
+            this.stocksNotified = snapshot.getStocksNotified();
+
+            Map<String, Stock> unique = new LinkedHashMap<>();
+            Stream.of(upTrend, downTrend, stocksNotified)
+                    .flatMap(Collection::stream)
+                    .forEach(stock -> unique.putIfAbsent(stock.getName(), stock));
+            this.all = new ArrayList<>(unique.values());
+            this.byEntry = new ArrayList<>(all);
+            byEntry.sort(Comparator.comparingDouble(Stock::getEntry).reversed().thenComparing(Stock::getName));
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        private List<Stock> ofTrend(TrendType trendType) {
+            if (trendType == TrendType.UP) {
+                return upTrend;
+            }
+            if (trendType == TrendType.DOWN) {
+                return downTrend;
+            }
+            return all;
+        }
+    }
+}
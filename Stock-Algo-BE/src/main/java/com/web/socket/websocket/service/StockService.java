@@ -1,83 +1,141 @@
 package com.web.socket.websocket.service;
 
-import com.web.socket.websocket.model.Stock;
+import com.web.socket.websocket.model.Quotes;
+import com.web.socket.websocket.model.ScreenerPage;
+import com.web.socket.websocket.utility.ScreenerParser;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.jsoup.Connection;
 import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.nodes.Node;
-import org.jsoup.select.Elements;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.net.HttpURLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Fetches the screener pages. The connections are kept alive between the ticks and the pages are gzipped,
+ * both handled by Jsoup. The last page of every link is kept so that it's revalidated with its ETag or
+ * Last-Modified date, a page that isn't modified or has the same content as before isn't parsed again.
+ * A page fetched less than stock.fetch.cache-ttl-millis ago isn't fetched at all, and a fetch that takes longer
+ * than stock.fetch.timeout-millis to connect or read is given up so it doesn't hold its thread.
+ * How every fetch ended is counted in stock.fetch.pages, tagged with the result
+ */
 @Service
 public class StockService {
 
+    private static final String CHANGED = "changed";
+    private static final String SAME_CONTENT = "same_content";
+    private static final String NOT_MODIFIED = "not_modified";
+    private static final String CACHED = "cached";
+
+    private MeterRegistry meterRegistry;
+    private Timer parseTimer;
+    private DistributionSummary parsedRows;
+    private long cacheTtlMillis;
+    private int timeoutMillis;
+    private Map<String, CachedPage> pages = new ConcurrentHashMap<>();
+
+    @Autowired
+    public StockService(MeterRegistry meterRegistry, @Value("${stock.fetch.cache-ttl-millis:500}") long cacheTtlMillis,
+                        @Value("${stock.fetch.timeout-millis:5000}") int timeoutMillis) {
+        this.meterRegistry = meterRegistry;
+        this.parseTimer = meterRegistry.timer("stock.parse");
+        this.parsedRows = meterRegistry.summary("stock.parse.rows");
+        this.cacheTtlMillis = cacheTtlMillis;
+        this.timeoutMillis = timeoutMillis;
+    }
+
     /**
-     * Fetching the node and assigning the data to a Stock object
-     that's then added to a list that's returned to the StockRefreshService
+     * Fetching the screener page and reading its rows to quotes that are returned to the StockFetcher.
+     * The page is only parsed if it has changed since it was last fetched,
+     * the quotes of an unchanged page are the same as the last time since they are never changed
      *
      * @param link
      * @return
      * @throws IOException
      */
-    public List<Stock> getStocks(String link) throws IOException {
-        List<Stock> stocks = new ArrayList<>();
-
-        Document doc = Jsoup.connect(link).get();
+    public ScreenerPage getPage(String link) throws IOException {
+        long now = System.currentTimeMillis();
+        CachedPage cached = pages.get(link);
+        if (cached != null && now - cached.fetchedAt < cacheTtlMillis) {
+            return unchanged(cached, CACHED);
+        }
 
-        Elements select = doc.select("body").select("div").select("table").select("tbody").select("tr");
+        Connection connection = Jsoup.connect(link).timeout(timeoutMillis);
+        if (cached != null && cached.etag != null) {
+            connection.header("If-None-Match", cached.etag);
+        }
+        if (cached != null && cached.lastModified != null) {
+            connection.header("If-Modified-Since", cached.lastModified);
+        }
+        Connection.Response response = connection.execute();
 
-        for (int i = 0; i < select.size(); i++) {
-            try {
-                String name = select.get(i).childNodes().get(3).childNodes().get(1).childNodes().get(2).toString();
-                String href = select.get(i).childNodes().get(3).childNodes().get(1).attributes().get("href");
+        if (cached != null && response.statusCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            pages.put(link, cached.revalidated(now, cached.etag, cached.lastModified));
+            return unchanged(cached, NOT_MODIFIED);
+        }
 
-                List<Node> prices = getStockPrice(doc, i);
+        byte[] hash = hash(response.bodyAsBytes());
+        String etag = response.header("ETag");
+        String lastModified = response.header("Last-Modified");
+        if (cached != null && Arrays.equals(hash, cached.hash)) {
+            pages.put(link, cached.revalidated(now, etag, lastModified));
+            return unchanged(cached, SAME_CONTENT);
+        }
 
-                Stock stock = Stock.builder()
-                        .name(name.trim())
-                        .website("Website")
-                        .lastPrice(toDouble(((Element) prices.get(0)).text()))
-                        .build();
+        long start = System.nanoTime();
+        Quotes quotes = ScreenerParser.parse(response.body());
+        parseTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        parsedRows.record(quotes.size());
 
-                stocks.add(stock);
+        pages.put(link, new CachedPage(quotes, hash, etag, lastModified, now));
+        meterRegistry.counter("stock.fetch.pages", "result", CHANGED).increment();
+        return new ScreenerPage(quotes, true);
+    }
 
-            } catch (IndexOutOfBoundsException ignored) {
-            }
+    private ScreenerPage unchanged(CachedPage cached, String result) {
+        meterRegistry.counter("stock.fetch.pages", "result", result).increment();
+        return new ScreenerPage(cached.quotes, false);
+    }
 
+    private byte[] hash(byte[] body) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(body);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         }
-        return stocks;
     }
 
     /**
-     * Getting the price from the node
-     * @param doc
-     * @param index
-     * @return
+     * The parsed quotes of a page along with what's needed to tell if the page has changed
      */
-    private List<Node> getStockPrice(Document doc, int index) {
-        List<Node> nodes = doc.select("body").select("div").get(0).childNodes().get(3).childNodes().get(1).childNodes().get(3).childNodes();
-
-        return nodes.stream()
-                .filter(node -> node.childNodeSize() > 0)
-                .collect(Collectors.toList())
-                .get(index).childNodes().stream()
-                .filter(n -> n.childNodeSize() > 0)
-                .collect(Collectors.toList());
-    }
+    private static class CachedPage {
 
-    /**
-     * reformat the comma to a dot and parse the string to a double
-     *
-     * @param number
-     * @return
-     */
-    private Double toDouble(String number) {
-        String normalized = number.replaceAll(",", ".");
-        return Double.parseDouble(normalized);
+        private final Quotes quotes;
+        private final byte[] hash;
+        private final String etag;
+        private final String lastModified;
+        private final long fetchedAt;
+
+        CachedPage(Quotes quotes, byte[] hash, String etag, String lastModified, long fetchedAt) {
+            this.quotes = quotes;
+            this.hash = hash;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.fetchedAt = fetchedAt;
+        }
+
+        CachedPage revalidated(long fetchedAt, String etag, String lastModified) {
+            return new CachedPage(quotes, hash, etag, lastModified, fetchedAt);
+        }
     }
 }
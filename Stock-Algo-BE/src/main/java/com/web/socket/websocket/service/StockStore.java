@@ -0,0 +1,361 @@
+package com.web.socket.websocket.service;
+
+import com.web.socket.websocket.cluster.WriteFence;
+import com.web.socket.websocket.model.Stock;
+import com.web.socket.websocket.model.StockState;
+import com.web.socket.websocket.repository.StockRepository;
+import com.web.socket.websocket.utility.SymbolTable;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Holds the stocks in memory for the jobs, which are the only ones changing them, indexed by symbol id.
+ * The jobs run under the job lock of the store, and the flusher converts the dirty stocks to entities under it too,
+ * so it never writes a stock a job is halfway through changing and marking a stock dirty allocates nothing.
+ * <p>
+ * All writes are behind the jobs, the deletes too: a stock is waiting at most once however often it's marked dirty,
+ * and the flusher thread writes them in batches every stock.store.flush-millis. When stock.store.flush-threshold
+ * stocks are waiting the flusher is woken at once. The flushes write one at a time under a write lock of their own
+ * that the jobs never take, so a job never waits for the database.
+ * At most stock.store.max-pending stocks wait, if the database is away for so long that more are marked dirty
+ * the new ones are dropped and counted in stock.store.dropped. A dropped stock is written again the next time
+ * it changes, at the latest at the next closing, and the warm start and the journal still have it.
+ * A job with buy signals requests a flush at once after it has published them, the signals that a leader going down
+ * hadn't written yet are in its journal and in the snapshots replicated to the other nodes.
+ * Every write goes through the WriteFence, so a leader that has lost its lease can't write over the new leader.
+ * The stocks waiting and the age of the oldest of them are in stock.store.pending and stock.store.pending.age,
+ * the flushes that failed and are retried in stock.store.flush.failures
+ */
+@Slf4j
+@Service
+public class StockStore {
+
+    private StockRepository stockRepository;
+    private WriteFence writeFence;
+    private MeterRegistry meterRegistry;
+    private ScheduledExecutorService flusher;
+    private volatile StockState[] stocks = new StockState[1024];
+    private ReentrantLock jobLock = new ReentrantLock();
+    private ReentrantLock writeLock = new ReentrantLock();
+    private Map<String, StockState> dirty = new ConcurrentHashMap<>();
+    private Set<String> removed = ConcurrentHashMap.newKeySet();
+    private volatile boolean loaded;
+    private volatile long pendingSince;
+    private AtomicBoolean flushRequested = new AtomicBoolean();
+    private int flushThreshold;
+    private int maxPending;
+    private Counter coalesced;
+    private Counter flushedEarly;
+    private Counter flushFailures;
+    private Counter dropped;
+
+    @Autowired
+    public StockStore(StockRepository stockRepository, WriteFence writeFence, MeterRegistry meterRegistry,
+                      @Value("${stock.store.flush-millis:5000}") long flushMillis,
+                      @Value("${stock.store.flush-threshold:2000}") int flushThreshold,
+                      @Value("${stock.store.max-pending:20000}") int maxPending) {
+        this.stockRepository = stockRepository;
+        this.writeFence = writeFence;
+        this.meterRegistry = meterRegistry;
+        this.flushThreshold = flushThreshold;
+        this.maxPending = maxPending;
+        this.coalesced = meterRegistry.counter("stock.store.coalesced");
+        this.flushedEarly = meterRegistry.counter("stock.store.flush.early");
+        this.flushFailures = meterRegistry.counter("stock.store.flush.failures");
+        this.dropped = meterRegistry.counter("stock.store.dropped");
+        meterRegistry.gauge("stock.store.pending", dirty, Map::size);
+        meterRegistry.gauge("stock.store.pending.age", this, StockStore::pendingAgeMillis);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("stock-store-"));
+        this.flusher.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets the lock the jobs hold while they change the stocks, the flusher holds it while it reads them
+     *
+     * @return
+     */
+    public ReentrantLock getJobLock() {
+        return jobLock;
+    }
+
+    /**
+     * Loads the stocks from the database that are not already held in memory,
+     * the stocks in memory are kept since they are the ones the lists refer to and the removed ones aren't loaded again
+     */
+    public synchronized void load() {
+        repositoryTimer("findAll").record(() -> stockRepository.findAll().forEach(stock -> {
+            int symbol = SymbolTable.DEFAULT.intern(stock.getName());
+            if (get(symbol) == null && !removed.contains(stock.getName())) {
+                set(symbol, StockState.of(symbol, SymbolTable.DEFAULT.name(symbol), stock));
+            }
+        }));
+        loaded = true;
+        log.info("Loaded " + findAll().size() + " stocks into memory");
+    }
+
+    /**
+     * Replaces the stocks in memory with the ones in the database, for when another node may have changed them
+     */
+    public synchronized void reload() {
+        stocks = new StockState[stocks.length];
+        load();
+    }
+
+    /**
+     * Replaces the stocks in memory with the ones of a warm start, without reading the database
+     *
+     * @param restored
+     */
+    public synchronized void restore(Collection<StockState> restored) {
+        stocks = new StockState[stocks.length];
+        restored.forEach(stock -> set(stock.getSymbol(), stock));
+        loaded = true;
+        log.info("Restored " + restored.size() + " stocks into memory");
+    }
+
+    /**
+     * Finds the stock held in memory, loading from the database the first time it's used
+     *
+     * @param symbol
+     * @return the stock, or null if there is none
+     */
+    public StockState find(int symbol) {
+        if (!loaded) {
+            load();
+        }
+        return get(symbol);
+    }
+
+    /**
+     * Finds the stock held in memory by its name
+     *
+     * @param name
+     * @return
+     */
+    public Optional<StockState> find(String name) {
+        int symbol = SymbolTable.DEFAULT.find(name);
+        return symbol < 0 ? Optional.empty() : Optional.ofNullable(find(symbol));
+    }
+
+    /**
+     * Gets a copy of all the stocks held in memory
+     *
+     * @return
+     */
+    public List<StockState> findAll() {
+        if (!loaded) {
+            load();
+        }
+        List<StockState> all = new ArrayList<>();
+        for (StockState stock : stocks) {
+            if (stock != null) {
+                all.add(stock);
+            }
+        }
+        return all;
+    }
+
+    /**
+     * Adds the stock to memory and marks it to be written to the database
+     *
+     * @param stock
+     */
+    public void put(StockState stock) {
+        set(stock.getSymbol(), stock);
+        markDirty(stock);
+    }
+
+    /**
+     * Marks the stock to be written to the database on the next flush, as it is then.
+     * Returns without waiting for the database, if stock.store.flush-threshold stocks are waiting the flusher is woken.
+     * A stock that isn't waiting already is dropped if stock.store.max-pending are
+     *
+     * @param stock
+     */
+    public void markDirty(StockState stock) {
+        removed.remove(stock.getName());
+        if (dirty.containsKey(stock.getName())) {
+            coalesced.increment();
+        } else if (dirty.size() >= maxPending) {
+            dropped.increment();
+            return;
+        }
+        dirty.put(stock.getName(), stock);
+        if (pendingSince == 0) {
+            pendingSince = System.currentTimeMillis();
+        }
+        if (dirty.size() >= flushThreshold) {
+            flushedEarly.increment();
+            requestFlush();
+        }
+    }
+
+    /**
+     * Flushes the dirty stocks on the flusher thread as soon as it's free, without waiting for it
+     */
+    public void requestFlush() {
+        if (flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(() -> {
+                    flushRequested.set(false);
+                    flush();
+                });
+            } catch (RejectedExecutionException e) {
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * Removes the stocks from memory and marks them to be deleted from the database on the next flush,
+     * all in one statement. Called by a job holding the job lock
+     *
+     * @param toRemove
+     */
+    public synchronized void removeAll(Collection<StockState> toRemove) {
+        if (toRemove.isEmpty()) {
+            return;
+        }
+        toRemove.forEach(stock -> {
+            stocks[stock.getSymbol()] = null;
+            dirty.remove(stock.getName());
+            removed.add(stock.getName());
+        });
+        if (pendingSince == 0) {
+            pendingSince = System.currentTimeMillis();
+        }
+        requestFlush();
+    }
+
+    /**
+     * Writes all dirty stocks to the database as batched upserts and deletes the removed ones.
+     * They are taken out and converted to entities under the job lock and the store, both released before
+     * they're written, so neither the jobs nor the store wait for the database. The write lock keeps the flushes
+     * in order, a later flush can't write a stock before an earlier one has written an older copy of it
+     */
+    public void flush() {
+        writeLock.lock();
+        try {
+            long since;
+            List<StockState> flushed = new ArrayList<>();
+            List<Stock> toSave = new ArrayList<>();
+            List<String> toDelete = new ArrayList<>();
+            // always the write lock, then the job lock, then the store, and only the drain holds the last two
+            jobLock.lock();
+            try {
+                synchronized (this) {
+                    since = pendingSince;
+                    pendingSince = 0;
+                    for (String name : dirty.keySet()) {
+                        StockState stock = dirty.remove(name);
+                        if (stock != null) {
+                            flushed.add(stock);
+                            toSave.add(stock.toStock());
+                        }
+                    }
+                    toDelete.addAll(removed);
+                }
+            } finally {
+                jobLock.unlock();
+            }
+
+            if (toSave.isEmpty() && toDelete.isEmpty()) {
+                return;
+            }
+
+            try {
+                writeFence.run(() -> {
+                    if (!toSave.isEmpty()) {
+                        repositoryTimer("upsertAll").record(() -> stockRepository.upsertAll(toSave));
+                    }
+                    if (!toDelete.isEmpty()) {
+                        repositoryTimer("deleteByNames").record(() -> stockRepository.deleteByNames(toDelete));
+                    }
+                });
+                // they stay removed until now so load() can't bring them back, one put back meanwhile is dirty instead
+                removed.removeAll(toDelete);
+                log.info("Flushed " + toSave.size() + " stocks and deleted " + toDelete.size() + " from the database");
+            } catch (RuntimeException e) {
+                log.info("Error flushing stocks: " + e.getMessage());
+                flushFailures.increment();
+                flushed.forEach(stock -> {
+                    if (!dirty.containsKey(stock.getName()) && dirty.size() >= maxPending) {
+                        dropped.increment();
+                    } else {
+                        dirty.putIfAbsent(stock.getName(), stock);
+                    }
+                });
+                pendingSince = since;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private double pendingAgeMillis() {
+        long since = pendingSince;
+        return since == 0 ? 0 : System.currentTimeMillis() - since;
+    }
+
+    private StockState get(int symbol) {
+        StockState[] current = stocks;
+        return symbol < current.length ? current[symbol] : null;
+    }
+
+    /**
+     * Puts the stock at its symbol id, the readers see either the old index or the grown one with the stock in it
+     *
+     * @param symbol
+     * @param stock
+     */
+    private synchronized void set(int symbol, StockState stock) {
+        StockState[] current = stocks;
+        if (symbol >= current.length) {
+            current = Arrays.copyOf(current, Math.max(symbol + 1, current.length * 2));
+        }
+        current[symbol] = stock;
+        stocks = current;
+    }
+
+    /**
+     * The time and number of calls to the database are recorded in stock.repository, tagged with the operation
+     *
+     * @param operation
+     * @return
+     */
+    private Timer repositoryTimer(String operation) {
+        return meterRegistry.timer("stock.repository", "operation", operation);
+    }
+
+    /**
+     * Waits for a running flush and writes what's still dirty or removed. If the database can't be reached
+     * the buy signals are still in the journal and recovered on the next start
+     *
+     * @throws InterruptedException
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(30, TimeUnit.SECONDS);
+        flush();
+        if (!dirty.isEmpty() || !removed.isEmpty()) {
+            log.info("Could not flush " + dirty.size() + " stocks and " + removed.size() + " deletes on shutdown");
+        }
+    }
+}
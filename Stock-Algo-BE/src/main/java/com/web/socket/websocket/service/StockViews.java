@@ -0,0 +1,247 @@
+package com.web.socket.websocket.service;
+
+import com.web.socket.websocket.StockSubscriptions;
+import com.web.socket.websocket.model.Stock;
+import com.web.socket.websocket.model.StockResult;
+import com.web.socket.websocket.model.StockView;
+import com.web.socket.websocket.utility.StockFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The filtered views of the lists that clients subscribe to on /topic/stock/{filter}, see StockFilter for the filters.
+ * A view is calculated once per published change for all its subscribers, and only while someone is subscribed.
+ * It's sent again only when its stocks have changed, always in full since it's only what the clients watch.
+ * <p>
+ * A watchlist belongs to the session that set it, no other client can see or change it. Its views are sent only
+ * to that session on /user/queue/stock/watch/{id}, at once when it's set and then whenever they change.
+ * The watchlists are dropped when their session disconnects, at most stock.views.max-watchlists of them are kept
+ */
+@Slf4j
+@Service
+public class StockViews {
+
+    public static final String VIEW_TOPIC = "/topic/stock/";
+    public static final String WATCH_QUEUE = "/queue/stock/";
+    public static final int MAX_WATCHED = 500;
+    private static final String USER_WATCH_QUEUE = "/user" + WATCH_QUEUE;
+
+    private StockSubscriptions stockSubscriptions;
+    private int maxWatchlists;
+    private Map<String, View> views = new ConcurrentHashMap<>();
+    private Map<String, Watcher> watchers = new ConcurrentHashMap<>();
+    private AtomicInteger watchlists = new AtomicInteger();
+    private volatile Published published = new Published(
+            new StockResult(Collections.emptyList(), Collections.emptyList(), Collections.emptyList()), 0);
+
+    @Autowired
+    public StockViews(StockSubscriptions stockSubscriptions, MeterRegistry meterRegistry,
+                      @Value("${stock.views.max-watchlists:1000}") int maxWatchlists) {
+        this.stockSubscriptions = stockSubscriptions;
+        this.maxWatchlists = maxWatchlists;
+        meterRegistry.gauge("stock.views", views, Map::size);
+        meterRegistry.gauge("stock.views.watchlists", watchlists);
+    }
+
+    /**
+     * Calculates the views that are subscribed to from the published lists. Called by the publisher, one at a time
+     *
+     * @param result
+     * @param sequence the sequence of the delta published with the lists
+     * @return the views that have changed, by their destination
+     */
+    public Map<String, StockView> update(StockResult result, long sequence) {
+        published = new Published(result, sequence);
+        return update(views, stockSubscriptions.getDestinations(), VIEW_TOPIC, null);
+    }
+
+    /**
+     * Calculates the views of the watchlists that their sessions are subscribed to, from the lists last given to update.
+     * Called by the publisher right after update
+     *
+     * @return the views that have changed, by the session and then the destination in the session
+     */
+    public Map<String, Map<String, StockView>> updateWatchlists() {
+        Map<String, Map<String, StockView>> changed = new LinkedHashMap<>();
+        watchers.forEach((sessionId, watcher) -> {
+            Map<String, StockView> sessionChanged = update(sessionId, watcher);
+            if (!sessionChanged.isEmpty()) {
+                changed.put(sessionId, sessionChanged);
+            }
+        });
+        return changed;
+    }
+
+    /**
+     * Gets a view as it was last published, for a client that has just subscribed to it
+     *
+     * @param sessionId the session of the client, whose watchlists are used
+     * @param path      the filter, the end of the destination
+     * @return the view, or null if the path isn't a filter
+     */
+    public StockView current(String sessionId, String path) {
+        StockFilter filter = StockFilter.parse(path);
+        if (filter == null) {
+            return null;
+        }
+        Published current = published;
+        if (filter.getSource() == StockFilter.Source.WATCH) {
+            Watcher watcher = watchers.get(sessionId);
+            return new StockView(current.sequence,
+                    apply(filter, current.result, watcher == null ? null : watcher.watchlists));
+        }
+        View view = views.get(VIEW_TOPIC + path);
+        StockView sent = view == null ? null : view.sent;
+        return sent != null ? sent : new StockView(current.sequence, apply(filter, current.result, null));
+    }
+
+    /**
+     * Sets the names in a watchlist of the session. Called by the publisher, one at a time with the updates,
+     * which sends the views of the watchlist the session is subscribed to at once
+     *
+     * @param sessionId
+     * @param id
+     * @param names
+     * @return the views of the session that have changed by their destination in the session,
+     * or null if the watchlist can't be added
+     */
+    public Map<String, StockView> watch(String sessionId, String id, Collection<String> names) {
+        Watcher watcher = watchers.get(sessionId);
+        boolean added = watcher == null || !watcher.watchlists.containsKey(id);
+        if (names.size() > MAX_WATCHED || (added && watchlists.get() >= maxWatchlists)) {
+            log.info("Not setting watchlist " + id + " with " + names.size() + " names");
+            return null;
+        }
+        watcher = watchers.computeIfAbsent(sessionId, session -> new Watcher());
+        if (watcher.watchlists.put(id, Collections.unmodifiableSet(new HashSet<>(names))) == null) {
+            watchlists.incrementAndGet();
+        }
+        watcher.views.values().stream()
+                .filter(view -> id.equals(view.filter.getWatchlist()))
+                .forEach(view -> view.sent = null);
+        return update(sessionId, watcher);
+    }
+
+    /**
+     * Drops the watchlists of a session that has disconnected
+     *
+     * @param event
+     */
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Watcher watcher = watchers.remove(event.getSessionId());
+        if (watcher != null) {
+            watchlists.addAndGet(-watcher.watchlists.size());
+        }
+    }
+
+    private Map<String, StockView> update(String sessionId, Watcher watcher) {
+        Map<String, StockView> changed = new LinkedHashMap<>();
+        update(watcher.views, stockSubscriptions.getDestinations(sessionId), USER_WATCH_QUEUE, watcher.watchlists)
+                .forEach((destination, view) -> changed.put(destination.substring(USER_WATCH_QUEUE.length()
+                        - WATCH_QUEUE.length()), view));
+        return changed;
+    }
+
+    /**
+     * Calculates the views subscribed to under the prefix from the lists last published
+     *
+     * @param views        the views calculated before, by their destination
+     * @param destinations the destinations subscribed to
+     * @param prefix
+     * @param watched      the watchlists of the session, or null for the views of the lists
+     * @return the views that have changed, by their destination
+     */
+    private Map<String, StockView> update(Map<String, View> views, Collection<String> destinations, String prefix,
+                                          Map<String, Set<String>> watched) {
+        Published current = published;
+        views.keySet().retainAll(destinations);
+
+        Map<String, StockView> changed = new LinkedHashMap<>();
+        for (String destination : destinations) {
+            View view = views.get(destination);
+            if (view == null) {
+                StockFilter filter = destination.startsWith(prefix)
+                        ? StockFilter.parse(destination.substring(prefix.length())) : null;
+                if (filter == null || (filter.getSource() == StockFilter.Source.WATCH) != (watched != null)) {
+                    continue;
+                }
+                view = new View(filter);
+                views.put(destination, view);
+            }
+
+            List<Stock> stocks = apply(view.filter, current.result, watched);
+            StockView sent = view.sent;
+            if (sent == null || !isSame(sent.getStocks(), stocks)) {
+                view.sent = new StockView(current.sequence, stocks);
+                changed.put(destination, view.sent);
+            }
+        }
+        return changed;
+    }
+
+    private List<Stock> apply(StockFilter filter, StockResult result, Map<String, Set<String>> watched) {
+        Set<String> names = filter.getWatchlist() == null || watched == null ? Collections.emptySet()
+                : watched.getOrDefault(filter.getWatchlist(), Collections.emptySet());
+        return filter.apply(result, names);
+    }
+
+    /**
+     * The copies of the stocks are shared between results until a stock changes,
+     * so a view is unchanged if it has the very same copies in the same order
+     *
+     * @param previous
+     * @param current
+     * @return
+     */
+    private boolean isSame(List<Stock> previous, List<Stock> current) {
+        if (previous.size() != current.size()) {
+            return false;
+        }
+        for (int i = 0; i < previous.size(); i++) {
+            if (previous.get(i) != current.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class View {
+
+        private final StockFilter filter;
+        private volatile StockView sent;
+
+        View(StockFilter filter) {
+            this.filter = filter;
+        }
+    }
+
+    /**
+     * The watchlists of a session by their id, and the views of them it's subscribed to by their destination
+     */
+    private static class Watcher {
+
+        private final Map<String, Set<String>> watchlists = new ConcurrentHashMap<>();
+        private final Map<String, View> views = new ConcurrentHashMap<>();
+    }
+
+    private static class Published {
+
+        private final StockResult result;
+        private final long sequence;
+
+        Published(StockResult result, long sequence) {
+            this.result = result;
+            this.sequence = sequence;
+        }
+    }
+}
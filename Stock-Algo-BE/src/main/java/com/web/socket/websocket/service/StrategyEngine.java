@@ -0,0 +1,165 @@
+package com.web.socket.websocket.service;
+
+import com.web.socket.websocket.model.StockState;
+import com.web.socket.websocket.model.StrategySignal;
+import com.web.socket.websocket.utility.PriceHistory;
+import com.web.socket.websocket.utility.Strategy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * Runs the strategies named in stock.strategies side by side with the live rules, on the prices of the same ticks.
+ * Every fetched price is checked against the strategies with a window while it's evaluated, the ones without a window
+ * only when the stock has changed since nothing else can change what they decide. Checking only reads,
+ * the signals are applied afterwards by the job, one stock at a time. Every strategy has its own list of signals,
+ * the latest first and at most one per stock and day, cleared every morning with the lists.
+ * The trends and the closing prices are the ones of the live rules, a strategy only decides when to buy.
+ * The signals of every strategy are counted in stock.strategy.signals, tagged with the strategy
+ */
+@Slf4j
+@Service
+public class StrategyEngine {
+
+    public static final int MAX_STRATEGIES = Long.SIZE;
+
+    private Strategy[] strategies;
+    private BitSet[] notified;
+    private List<List<StrategySignal>> signals = new ArrayList<>();
+    private Counter[] signalCounters;
+    private boolean[] changed;
+    private long windowed;
+    private volatile Map<String, List<StrategySignal>> published = Collections.emptyMap();
+
+    @Autowired
+    public StrategyEngine(Environment environment, MeterRegistry meterRegistry) {
+        Set<String> names = new LinkedHashSet<>();
+        for (String name : environment.getProperty("stock.strategies", "").split(",")) {
+            if (!name.trim().isEmpty()) {
+                names.add(name.trim());
+            }
+        }
+        if (names.size() > MAX_STRATEGIES) {
+            throw new IllegalStateException("At most " + MAX_STRATEGIES + " strategies can be run, not " + names.size());
+        }
+
+        strategies = new Strategy[names.size()];
+        notified = new BitSet[names.size()];
+        signalCounters = new Counter[names.size()];
+        changed = new boolean[names.size()];
+        int index = 0;
+        for (String name : names) {
+            strategies[index] = Strategy.of(name, environment);
+            notified[index] = new BitSet();
+            signals.add(new ArrayList<>());
+            signalCounters[index] = meterRegistry.counter("stock.strategy.signals", "strategy", name);
+            changed[index] = true;
+            if (strategies[index].hasWindow()) {
+                windowed |= 1L << index;
+            }
+            log.info("Running strategy " + strategies[index]);
+            index++;
+        }
+        publish();
+    }
+
+    /**
+     * Is there a strategy with a window, which has to check every fetched price even if nothing has changed?
+     *
+     * @return
+     */
+    public boolean hasWindows() {
+        return windowed != 0;
+    }
+
+    /**
+     * Checks the stock against every strategy that hasn't signaled it today, the ones without a window
+     * only if the stock has changed. Only reads, so it's called for the stocks in parallel while they're evaluated
+     *
+     * @param stock
+     * @param history the prices of the stock today, may be null
+     * @param now     in epoch milliseconds
+     * @param changed has the stock changed on this tick?
+     * @return a bit for every strategy that signals the stock, in the order they were named
+     */
+    public long evaluate(StockState stock, PriceHistory history, long now, boolean changed) {
+        long signaled = 0;
+        long checked = changed ? -1L : windowed;
+        for (int i = 0; i < strategies.length; i++) {
+            if ((checked & 1L << i) != 0 && !notified[i].get(stock.getSymbol())
+                    && strategies[i].isBuySignal(stock, history, now)) {
+                signaled |= 1L << i;
+            }
+        }
+        return signaled;
+    }
+
+    /**
+     * Adds the signals of the stock to the strategies that gave them, called by the job one stock at a time
+     *
+     * @param stock
+     * @param signaled the bits returned by evaluate
+     * @param now      in epoch milliseconds
+     */
+    public void apply(StockState stock, long signaled, long now) {
+        LocalTime time = LocalTime.ofInstant(Instant.ofEpochMilli(now), ZoneId.systemDefault()).withNano(0);
+        for (int i = 0; i < strategies.length; i++) {
+            if ((signaled & 1L << i) != 0 && !notified[i].get(stock.getSymbol())) {
+                notified[i].set(stock.getSymbol());
+                signals.get(i).add(new StrategySignal(stock.getName(), time, stock.getLastPrice(),
+                        strategies[i].entry(stock)));
+                signalCounters[i].increment();
+                changed[i] = true;
+            }
+        }
+    }
+
+    /**
+     * Forgets the signals of every strategy, called by the job clearing the lists
+     */
+    public void clear() {
+        for (int i = 0; i < strategies.length; i++) {
+            notified[i].clear();
+            signals.get(i).clear();
+            changed[i] = true;
+        }
+        publish();
+    }
+
+    /**
+     * Makes the signals applied since the last time readable, called by the job when it's done
+     */
+    public void publish() {
+        Map<String, List<StrategySignal>> updated = new LinkedHashMap<>(published);
+        boolean any = false;
+        for (int i = 0; i < strategies.length; i++) {
+            if (changed[i]) {
+                List<StrategySignal> latestFirst = new ArrayList<>(signals.get(i));
+                Collections.reverse(latestFirst);
+                updated.put(strategies[i].getName(), Collections.unmodifiableList(latestFirst));
+                changed[i] = false;
+                any = true;
+            }
+        }
+        if (any) {
+            published = Collections.unmodifiableMap(updated);
+        }
+    }
+
+    /**
+     * Gets the signals of every strategy as they were last published, by the name of the strategy
+     *
+     * @return
+     */
+    public Map<String, List<StrategySignal>> getSignals() {
+        return published;
+    }
+}
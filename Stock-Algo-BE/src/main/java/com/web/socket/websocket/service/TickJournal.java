@@ -0,0 +1,429 @@
+package com.web.socket.websocket.service;
+
+import com.web.socket.websocket.utility.SymbolTable;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An append-only journal of the prices and buy signals of the day, written straight into a memory-mapped file
+ * so a crash of the application loses nothing that has been appended. There is one file per day, the next one
+ * is started when the lists are cleared or by the first append after midnight, whichever comes first.
+ * The file is mapped stock.journal.region-bytes at a time from the end of its last record, and cut there again
+ * when it's closed or reopened, so restarts don't leave empty regions behind.
+ * The files older than stock.journal.retain-days are deleted.
+ * <p>
+ * A record starts with its type, which is written last so a record that was cut off is never read:
+ * a symbol (id, length, name in UTF-8), a tick (symbol id, price, epoch millis) or a buy signal (symbol id, epoch millis).
+ * The ids in a file are its own, since the ids of the SymbolTable change when the application restarts,
+ * the symbols of the file are looked up by their SymbolTable id. A tick is only appended when the price differs
+ * from the last one of the symbol.
+ * <p>
+ * Only the prices and the buy signals are journaled, not what the closing does to the trends and the closing prices,
+ * so a replay depends on the warm start written after the closing, or the database if there is none, to have those
+ */
+@Slf4j
+@Service
+public class TickJournal {
+
+    private static final byte SYMBOL = 1;
+    private static final byte TICK = 2;
+    private static final byte SIGNAL = 3;
+    private static final int SYMBOL_HEADER_BYTES = 7;
+    private static final int TICK_BYTES = 21;
+    private static final int SIGNAL_BYTES = 13;
+    private static final int MAX_NAME_BYTES = Short.MAX_VALUE;
+    private static final String FILE_PREFIX = "ticks-";
+    private static final String FILE_SUFFIX = ".bin";
+
+    private Path directory;
+    private int regionBytes;
+    private int retainDays;
+    private Timer replayTimer;
+    private FileChannel channel;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long nextDayMillis;
+    private JournalSymbol[] symbols = new JournalSymbol[512];
+    private int journaled;
+
+    @Autowired
+    public TickJournal(MeterRegistry meterRegistry,
+                       @Value("${stock.journal.directory:journal}") String directory,
+                       @Value("${stock.journal.region-bytes:16777216}") int regionBytes,
+                       @Value("${stock.journal.retain-days:7}") int retainDays) {
+        this.directory = Paths.get(directory);
+        this.regionBytes = regionBytes;
+        this.retainDays = retainDays;
+        this.replayTimer = meterRegistry.timer("stock.journal.replay");
+    }
+
+    /**
+     * Called for every record when a journal is replayed, in the order they were appended
+     */
+    public interface Listener {
+
+        void onTick(int symbol, double price, long time);
+
+        void onSignal(int symbol, long time);
+    }
+
+    /**
+     * Appends the price of the stock, unless it's the same as the last one appended
+     *
+     * @param symbol the SymbolTable id of the stock
+     * @param price
+     * @param time   in epoch milliseconds
+     */
+    public synchronized void appendTick(int symbol, double price, long time) {
+        try {
+            rolloverAfterMidnight(time);
+            JournalSymbol journalSymbol = symbol(symbol);
+            if (Double.compare(journalSymbol.lastPrice, price) == 0) {
+                return;
+            }
+            int position = reserve(TICK_BYTES);
+            region.putInt(position + 1, journalSymbol.id);
+            region.putDouble(position + 5, price);
+            region.putLong(position + 13, time);
+            commit(position, TICK, TICK_BYTES);
+            journalSymbol.lastPrice = price;
+        } catch (IOException e) {
+            log.info("Error appending tick to the journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Appends a buy signal of the stock
+     *
+     * @param symbol the SymbolTable id of the stock
+     * @param time   in epoch milliseconds
+     */
+    public synchronized void appendSignal(int symbol, long time) {
+        try {
+            rolloverAfterMidnight(time);
+            JournalSymbol journalSymbol = symbol(symbol);
+            int position = reserve(SIGNAL_BYTES);
+            region.putInt(position + 1, journalSymbol.id);
+            region.putLong(position + 5, time);
+            commit(position, SIGNAL, SIGNAL_BYTES);
+        } catch (IOException e) {
+            log.info("Error appending signal to the journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Is there a journal for the given day?
+     *
+     * @param date
+     * @return
+     */
+    public boolean exists(LocalDate date) {
+        return Files.exists(file(date));
+    }
+
+    /**
+     * Reads the journal of the given day from the start, the time it takes is recorded in stock.journal.replay.
+     * The symbols are given to the listener by their SymbolTable id
+     *
+     * @param date
+     * @param listener
+     * @return the number of records replayed
+     */
+    public synchronized int replay(LocalDate date, Listener listener) {
+        if (!exists(date)) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        int[] records = {0};
+        try (FileChannel replayed = FileChannel.open(file(date), StandardOpenOption.READ)) {
+            read(replayed, null, new Listener() {
+                @Override
+                public void onTick(int symbol, double price, long time) {
+                    records[0]++;
+                    listener.onTick(symbol, price, time);
+                }
+
+                @Override
+                public void onSignal(int symbol, long time) {
+                    records[0]++;
+                    listener.onSignal(symbol, time);
+                }
+            });
+        } catch (IOException e) {
+            log.info("Error replaying the journal of " + date + ": " + e.getMessage());
+        }
+        replayTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return records[0];
+    }
+
+    /**
+     * Closes the journal of the day, the next append starts the journal of the day it's made
+     */
+    public synchronized void rollover() {
+        close();
+    }
+
+    /**
+     * Closes the journal, cutting the file after the last record
+     */
+    @PreDestroy
+    public synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        region.force();
+        cut(channel, regionStart + region.position());
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.info("Error closing the journal: " + e.getMessage());
+        }
+        channel = null;
+        region = null;
+        clearSymbols();
+    }
+
+    /**
+     * Gets the stock in the journal, appending its symbol the first time the stock is journaled
+     *
+     * @param symbol the SymbolTable id of the stock
+     * @return
+     * @throws IOException
+     */
+    private JournalSymbol symbol(int symbol) throws IOException {
+        if (channel == null) {
+            open();
+        }
+        JournalSymbol journalSymbol = symbol < symbols.length ? symbols[symbol] : null;
+        if (journalSymbol != null) {
+            return journalSymbol;
+        }
+
+        String name = SymbolTable.DEFAULT.name(symbol);
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_NAME_BYTES) {
+            throw new IOException("Name is too long: " + name);
+        }
+        journalSymbol = new JournalSymbol(journaled, symbol);
+        int position = reserve(SYMBOL_HEADER_BYTES + bytes.length);
+        region.putInt(position + 1, journalSymbol.id);
+        region.putShort(position + 5, (short) bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            region.put(position + SYMBOL_HEADER_BYTES + i, bytes[i]);
+        }
+        commit(position, SYMBOL, SYMBOL_HEADER_BYTES + bytes.length);
+        putSymbol(symbol, journalSymbol);
+        return journalSymbol;
+    }
+
+    /**
+     * Cuts the file after the last record. A file that is still mapped can't be cut on every platform,
+     * it's then left as it is, the empty space after the last record is never read
+     *
+     * @param journal
+     * @param end     the position after the last record
+     */
+    private void cut(FileChannel journal, long end) {
+        try {
+            if (journal.size() > end) {
+                journal.truncate(end);
+            }
+        } catch (IOException e) {
+            log.info("Error cutting the journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Closes the journal of the day before if the time is of the next day, so the append opens the journal of today
+     *
+     * @param time in epoch milliseconds
+     */
+    private void rolloverAfterMidnight(long time) {
+        if (channel != null && time >= nextDayMillis) {
+            log.info("Rolling over the journal after midnight");
+            close();
+        }
+    }
+
+    private void putSymbol(int symbol, JournalSymbol journalSymbol) {
+        if (symbol >= symbols.length) {
+            symbols = Arrays.copyOf(symbols, Math.max(symbol + 1, symbols.length * 2));
+        }
+        symbols[symbol] = journalSymbol;
+        journaled = Math.max(journaled, journalSymbol.id + 1);
+    }
+
+    private void clearSymbols() {
+        Arrays.fill(symbols, null);
+        journaled = 0;
+    }
+
+    /**
+     * Opens the journal of today, reading what has already been appended to it to continue after the last record.
+     * Anything after the last record is cut off before the next region is mapped
+     *
+     * @throws IOException
+     */
+    private void open() throws IOException {
+        LocalDate today = LocalDate.now();
+        Files.createDirectories(directory);
+        deleteExpired(today);
+        FileChannel opened = FileChannel.open(file(today),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            clearSymbols();
+            regionStart = read(opened, this, null);
+            cut(opened, regionStart);
+            region = opened.map(FileChannel.MapMode.READ_WRITE, regionStart, regionBytes);
+        } catch (IOException e) {
+            opened.close();
+            throw e;
+        }
+        channel = opened;
+        nextDayMillis = today.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        log.info("Opened the journal of " + today + " at " + regionStart + " bytes");
+    }
+
+    /**
+     * Makes sure the mapped region has room for the record, mapping the next region of the file if it hasn't
+     *
+     * @param bytes
+     * @return the position of the record in the region
+     * @throws IOException
+     */
+    private int reserve(int bytes) throws IOException {
+        if (region.remaining() < bytes) {
+            region.force();
+            regionStart += region.position();
+            region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, Math.max(regionBytes, bytes));
+        }
+        return region.position();
+    }
+
+    private void commit(int position, byte type, int bytes) {
+        region.put(position, type);
+        region.position(position + bytes);
+    }
+
+    /**
+     * Reads the records of a journal until the first one that's empty, cut off or of an unknown symbol
+     *
+     * @param journal
+     * @param appending the journal the symbols are added to, with the last price of each, may be null
+     * @param listener  may be null
+     * @return the position after the last record
+     * @throws IOException
+     */
+    private static long read(FileChannel journal, TickJournal appending, Listener listener) throws IOException {
+        long size = Math.min(journal.size(), Integer.MAX_VALUE);
+        MappedByteBuffer buffer = journal.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        JournalSymbol[] read = new JournalSymbol[256];
+        int symbolCount = 0;
+        int position = 0;
+        while (position < size) {
+            byte type = buffer.get(position);
+            int remaining = (int) size - position;
+            if (type == SYMBOL && remaining >= SYMBOL_HEADER_BYTES) {
+                int length = buffer.getShort(position + 5);
+                if (remaining < SYMBOL_HEADER_BYTES + length) {
+                    break;
+                }
+                byte[] bytes = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    bytes[i] = buffer.get(position + SYMBOL_HEADER_BYTES + i);
+                }
+                int id = buffer.getInt(position + 1);
+                // the ids are given in order, so any other id was cut off or overwritten
+                if (id < 0 || id > symbolCount) {
+                    break;
+                }
+                symbolCount = Math.max(symbolCount, id + 1);
+                if (id >= read.length) {
+                    read = Arrays.copyOf(read, Math.max(id + 1, read.length * 2));
+                }
+                read[id] = new JournalSymbol(id, SymbolTable.DEFAULT.intern(new String(bytes, StandardCharsets.UTF_8)));
+                if (appending != null) {
+                    appending.putSymbol(read[id].symbol, read[id]);
+                }
+                position += SYMBOL_HEADER_BYTES + length;
+            } else if (type == TICK && remaining >= TICK_BYTES && find(read, buffer.getInt(position + 1)) != null) {
+                JournalSymbol symbol = find(read, buffer.getInt(position + 1));
+                double price = buffer.getDouble(position + 5);
+                symbol.lastPrice = price;
+                if (listener != null) {
+                    listener.onTick(symbol.symbol, price, buffer.getLong(position + 13));
+                }
+                position += TICK_BYTES;
+            } else if (type == SIGNAL && remaining >= SIGNAL_BYTES && find(read, buffer.getInt(position + 1)) != null) {
+                if (listener != null) {
+                    listener.onSignal(find(read, buffer.getInt(position + 1)).symbol, buffer.getLong(position + 5));
+                }
+                position += SIGNAL_BYTES;
+            } else {
+                break;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Deletes the journals of the days that are no longer retained
+     *
+     * @param today
+     */
+    private void deleteExpired(LocalDate today) {
+        LocalDate oldest = today.minusDays(retainDays);
+        try (DirectoryStream<Path> journals = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path journal : journals) {
+                String fileName = journal.getFileName().toString();
+                try {
+                    LocalDate date = LocalDate.parse(fileName.substring(FILE_PREFIX.length(), fileName.length() - FILE_SUFFIX.length()));
+                    if (date.isBefore(oldest)) {
+                        Files.delete(journal);
+                        log.info("Deleted the journal " + fileName);
+                    }
+                } catch (DateTimeParseException e) {
+                    log.info("Skipping unknown journal " + fileName);
+                }
+            }
+        } catch (IOException e) {
+            log.info("Error deleting old journals: " + e.getMessage());
+        }
+    }
+
+    private static JournalSymbol find(JournalSymbol[] read, int id) {
+        return id >= 0 && id < read.length ? read[id] : null;
+    }
+
+    private Path file(LocalDate date) {
+        return directory.resolve(FILE_PREFIX + date + FILE_SUFFIX);
+    }
+
+    private static class JournalSymbol {
+
+        private final int id;
+        private final int symbol;
+        private double lastPrice = Double.NaN;
+
+        JournalSymbol(int id, int symbol) {
+            this.id = id;
+            this.symbol = symbol;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.web.socket.websocket.service;
+
+import com.web.socket.websocket.cluster.WriteFence;
+import com.web.socket.websocket.model.StockState;
+import com.web.socket.websocket.model.TrendType;
+import com.web.socket.websocket.model.WarmStart;
+import com.web.socket.websocket.utility.SymbolTable;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the stocks and the buy signals of the jobs in a file, so a restart has them back without the database.
+ * The file is encoded by the jobs while they hold the job lock and written afterwards, to a temporary file
+ * that replaces the last one, so a crash leaves either the old or the new file. It starts with its version,
+ * the time it was taken and the epoch of the node, every stock follows with its closing extremes, its trend
+ * as an ordinal and the time of its buy signal in epoch milliseconds, then the stocks notified as positions,
+ * the latest first, and a checksum of it all. A file that is cut off or of another version isn't read.
+ * Nor is a file older than stock.warm-start.max-age-millis, or one written before another node was elected,
+ * the database may have been written after them.
+ * The time to write it is in stock.warm-start.write and its size in stock.warm-start.bytes
+ */
+@Slf4j
+@Service
+public class WarmStartStore {
+
+    private static final int VERSION = 2;
+    private static final int CHECKSUM_BYTES = Long.BYTES;
+    private static final TrendType[] TRENDS = TrendType.values();
+
+    private WriteFence writeFence;
+    private Path file;
+    private long maxAgeMillis;
+    private Timer writeTimer;
+    private DistributionSummary fileBytes;
+
+    @Autowired
+    public WarmStartStore(WriteFence writeFence, MeterRegistry meterRegistry,
+                          @Value("${stock.warm-start.file:journal/warm-start.bin}") String file,
+                          @Value("${stock.warm-start.max-age-millis:600000}") long maxAgeMillis) {
+        this.writeFence = writeFence;
+        this.file = Paths.get(file);
+        this.maxAgeMillis = maxAgeMillis;
+        this.writeTimer = meterRegistry.timer("stock.warm-start.write");
+        this.fileBytes = meterRegistry.summary("stock.warm-start.bytes");
+    }
+
+    /**
+     * Encodes the stocks with the epoch this node writes with, called by the jobs while no stock is being changed
+     *
+     * @param stocks
+     * @param stocksNotified in the order of the list, the ones that aren't among the stocks are left out
+     * @param time           in epoch milliseconds
+     * @return
+     */
+    public byte[] encode(Collection<StockState> stocks, Collection<StockState> stocksNotified, long time) {
+        Map<String, Integer> positions = new HashMap<>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + stocks.size() * 64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeLong(time);
+            out.writeLong(writeFence.getEpoch());
+            out.writeInt(stocks.size());
+            for (StockState stock : stocks) {
+                positions.put(stock.getName(), positions.size());
+                writeStock(out, stock);
+            }
+            // a stock removed at closing stays in the buy signals of the day, but it's no longer stored
+            List<Integer> notified = new ArrayList<>(stocksNotified.size());
+            for (StockState stock : stocksNotified) {
+                Integer position = positions.get(stock.getName());
+                if (position != null) {
+                    notified.add(position);
+                }
+            }
+            out.writeInt(notified.size());
+            for (int position : notified) {
+                out.writeInt(position);
+            }
+            CRC32 checksum = new CRC32();
+            checksum.update(bytes.toByteArray());
+            out.writeLong(checksum.getValue());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Replaces the file with the encoded stocks
+     *
+     * @param encoded
+     */
+    public void write(byte[] encoded) {
+        long start = System.nanoTime();
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path written = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try {
+                Files.write(written, encoded);
+                Files.move(written, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(written);
+            }
+            fileBytes.record(encoded.length);
+        } catch (IOException e) {
+            log.info("Error writing the warm start: " + e.getMessage());
+        }
+        writeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Reads the stocks as they were when the file was written, interning their names
+     *
+     * @return the stocks, or null if there is no file that can be read or it may be older than the database
+     */
+    public WarmStart read() {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            if (bytes.length < CHECKSUM_BYTES + 1 || bytes[0] != VERSION) {
+                log.info("Skipping the warm start, it isn't of version " + VERSION);
+                return null;
+            }
+            CRC32 checksum = new CRC32();
+            checksum.update(bytes, 0, bytes.length - CHECKSUM_BYTES);
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+                in.skipBytes(bytes.length - CHECKSUM_BYTES);
+                if (in.readLong() != checksum.getValue()) {
+                    log.info("Skipping the warm start, it's cut off or damaged");
+                    return null;
+                }
+            }
+            WarmStart warmStart = decode(bytes);
+            long age = System.currentTimeMillis() - warmStart.getTime();
+            if (age > maxAgeMillis) {
+                log.info("Skipping the warm start, it's " + age + " ms old");
+                return null;
+            }
+            long latestEpoch = writeFence.latestEpoch();
+            if (warmStart.getEpoch() < latestEpoch) {
+                log.info("Skipping the warm start of epoch " + warmStart.getEpoch() + ", epoch " + latestEpoch
+                        + " has been elected since");
+                return null;
+            }
+            return warmStart;
+        } catch (IOException | RuntimeException e) {
+            log.info("Error reading the warm start: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private WarmStart decode(byte[] bytes) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            in.readUnsignedByte();
+            long time = in.readLong();
+            long epoch = in.readLong();
+            StockState[] stocks = new StockState[in.readInt()];
+            for (int i = 0; i < stocks.length; i++) {
+                stocks[i] = readStock(in);
+            }
+            int notified = in.readInt();
+            List<StockState> stocksNotified = new ArrayList<>(notified);
+            for (int i = 0; i < notified; i++) {
+                stocksNotified.add(stocks[in.readInt()]);
+            }
+            return new WarmStart(time, epoch, Arrays.asList(stocks), stocksNotified);
+        }
+    }
+
+    private static void writeStock(DataOutputStream out, StockState stock) throws IOException {
+        out.writeUTF(stock.getName());
+        out.writeBoolean(stock.getWebsite() != null);
+        if (stock.getWebsite() != null) {
+            out.writeUTF(stock.getWebsite());
+        }
+        out.writeDouble(stock.getLastPrice());
+        out.writeDouble(stock.getHighestClosingPrice());
+        out.writeDouble(stock.getLowestClosingPrice());
+        out.writeDouble(stock.getEntry());
+        out.writeBoolean(stock.isNotified());
+        out.writeByte(stock.getTrendType() == null ? -1 : stock.getTrendType().ordinal());
+        out.writeLong(stock.getBuySignalMillis());
+    }
+
+    private static StockState readStock(DataInputStream in) throws IOException {
+        int symbol = SymbolTable.DEFAULT.intern(in.readUTF());
+        StockState stock = new StockState(symbol, SymbolTable.DEFAULT.name(symbol));
+        if (in.readBoolean()) {
+            stock.setWebsite(in.readUTF());
+        }
+        stock.setLastPrice(in.readDouble());
+        stock.setHighestClosingPrice(in.readDouble());
+        stock.setLowestClosingPrice(in.readDouble());
+        stock.setEntry(in.readDouble());
+        stock.setNotified(in.readBoolean());
+        byte trend = in.readByte();
+        stock.setTrendType(trend < 0 ? null : TRENDS[trend]);
+        stock.setBuySignalMillis(in.readLong());
+        return stock;
+    }
+}
@@ -0,0 +1,31 @@
+package com.web.socket.websocket.source;
+
+import com.web.socket.websocket.model.ScreenerPage;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Where the prices come from. A source has one or more feeds that the StockFetcher fetches in parallel,
+ * each with its own timeout and status. Which source is used is chosen with stock.source.type,
+ * screener (the default), replay or synthetic
+ */
+public interface PriceSource {
+
+    /**
+     * The names of the feeds, in the order of the statuses of a fetch. Their stocks are merged in the order they answer
+     *
+     * @return
+     */
+    List<String> getFeeds();
+
+    /**
+     * Fetches the stocks of a feed, changed is false if none of the prices have changed since it was last fetched.
+     * Each feed is fetched by one task at a time, but different feeds may be fetched at the same time
+     *
+     * @param feed
+     * @return
+     * @throws IOException
+     */
+    ScreenerPage fetch(String feed) throws IOException;
+}
@@ -0,0 +1,100 @@
+package com.web.socket.websocket.source;
+
+import com.web.socket.websocket.backtest.PriceSeries;
+import com.web.socket.websocket.backtest.PriceSeriesReader;
+import com.web.socket.websocket.model.Quotes;
+import com.web.socket.websocket.model.ScreenerPage;
+import com.web.socket.websocket.utility.SymbolTable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays back recorded prices, in the same csv format as the backtest reads, as if they were fetched live.
+ * The recording starts at its first price when it's first fetched and then runs stock.source.replay.speed
+ * times faster than the clock, every fetch gets the latest price of every stock up to that point.
+ * With stock.source.replay.loop it starts over when it reaches the end, otherwise the last prices are kept
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stock.source.type", havingValue = "replay")
+public class ReplaySource implements PriceSource {
+
+    private static final String FEED = "replay";
+
+    private final List<PriceSeries> series;
+    private final int[] symbols;
+    private final int[] cursors;
+    private final double speed;
+    private final boolean loop;
+    private final long firstTime;
+    private final long lastTime;
+    private long startNanos = -1;
+
+    @Autowired
+    public ReplaySource(@Value("${stock.source.replay.path}") String path,
+                        @Value("${stock.source.replay.speed:1}") double speed,
+                        @Value("${stock.source.replay.loop:false}") boolean loop) throws IOException {
+        this(PriceSeriesReader.read(Paths.get(path)), speed, loop);
+    }
+
+    public ReplaySource(List<PriceSeries> series, double speed, boolean loop) {
+        if (speed <= 0) {
+            throw new IllegalArgumentException("Speed must be positive");
+        }
+        this.series = series;
+        this.symbols = series.stream().mapToInt(s -> SymbolTable.DEFAULT.intern(s.getName())).toArray();
+        this.cursors = new int[series.size()];
+        this.speed = speed;
+        this.loop = loop;
+        this.firstTime = series.stream().filter(s -> s.size() > 0).mapToLong(s -> s.time(0)).min().orElse(0);
+        this.lastTime = series.stream().filter(s -> s.size() > 0).mapToLong(s -> s.time(s.size() - 1)).max().orElse(0);
+        Arrays.fill(cursors, -1);
+        log.info("Replaying " + series.size() + " stocks at " + speed + " times the speed");
+    }
+
+    @Override
+    public List<String> getFeeds() {
+        return Collections.singletonList(FEED);
+    }
+
+    @Override
+    public synchronized ScreenerPage fetch(String feed) {
+        long now = System.nanoTime();
+        if (startNanos < 0) {
+            startNanos = now;
+        }
+        long replayTime = firstTime + (long) (TimeUnit.NANOSECONDS.toMillis(now - startNanos) * speed);
+        if (loop && replayTime > lastTime) {
+            Arrays.fill(cursors, -1);
+            startNanos = now;
+            replayTime = firstTime;
+        }
+
+        boolean changed = false;
+        Quotes quotes = new Quotes(series.size());
+        for (int i = 0; i < series.size(); i++) {
+            PriceSeries prices = series.get(i);
+            int cursor = cursors[i];
+            while (cursor + 1 < prices.size() && prices.time(cursor + 1) <= replayTime) {
+                cursor++;
+            }
+            if (cursor < 0) {
+                continue;
+            }
+            changed |= cursor != cursors[i] && (cursors[i] < 0 || prices.price(cursor) != prices.price(cursors[i]));
+            cursors[i] = cursor;
+            quotes.add(symbols[i], prices.price(cursor));
+        }
+        return new ScreenerPage(quotes, changed);
+    }
+}
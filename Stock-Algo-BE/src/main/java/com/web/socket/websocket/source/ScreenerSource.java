@@ -0,0 +1,45 @@
+package com.web.socket.websocket.source;
+
+import com.web.socket.websocket.model.ScreenerPage;
+import com.web.socket.websocket.service.StockService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The screener pages, one feed for each filter. The link of a filter is set with stock.source.screener.&lt;filter&gt;
+ */
+@Component
+@ConditionalOnProperty(name = "stock.source.type", havingValue = "screener", matchIfMissing = true)
+public class ScreenerSource implements PriceSource {
+
+    private static final List<String> FILTERS = Arrays.asList(
+            "_5m_30m3", "_10m_20m3_50y", "_50m3", "_200thisYear", "_200OneYear");
+
+    private StockService stockService;
+    private Map<String, String> links = new LinkedHashMap<>();
+
+    @Autowired
+    public ScreenerSource(StockService stockService, Environment environment) {
+        this.stockService = stockService;
+        FILTERS.forEach(filter -> links.put(filter, environment.getProperty("stock.source.screener." + filter, "")));
+    }
+
+    @Override
+    public List<String> getFeeds() {
+        return new ArrayList<>(links.keySet());
+    }
+
+    @Override
+    public ScreenerPage fetch(String feed) throws IOException {
+        return stockService.getPage(links.get(feed));
+    }
+}
@@ -0,0 +1,89 @@
+package com.web.socket.websocket.source;
+
+import com.web.socket.websocket.model.Quotes;
+import com.web.socket.websocket.model.ScreenerPage;
+import com.web.socket.websocket.utility.SymbolTable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates stock.source.synthetic.symbols stocks named SYN00000 and up, whose prices take
+ * stock.source.synthetic.ticks-per-second random steps a second of stock.source.synthetic.volatility each.
+ * The steps since the last fetch are taken at once, so the prices move as much however often they are fetched.
+ * The prices are rounded to öre like on the screeners and the same seed always gives the same walk
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stock.source.type", havingValue = "synthetic")
+public class SyntheticSource implements PriceSource {
+
+    private static final String FEED = "synthetic";
+
+    private final int[] symbols;
+    private final double[] prices;
+    private final double ticksPerSecond;
+    private final double volatility;
+    private final Random random;
+    private long lastNanos = -1;
+    private double pendingTicks;
+
+    @Autowired
+    public SyntheticSource(@Value("${stock.source.synthetic.symbols:1000}") int symbols,
+                           @Value("${stock.source.synthetic.ticks-per-second:1}") double ticksPerSecond,
+                           @Value("${stock.source.synthetic.volatility:0.001}") double volatility,
+                           @Value("${stock.source.synthetic.seed:1}") long seed) {
+        this.symbols = new int[symbols];
+        this.prices = new double[symbols];
+        this.ticksPerSecond = ticksPerSecond;
+        this.volatility = volatility;
+        this.random = new Random(seed);
+        for (int i = 0; i < symbols; i++) {
+            this.symbols[i] = SymbolTable.DEFAULT.intern(String.format("SYN%05d", i));
+            prices[i] = 10 + random.nextInt(1000);
+        }
+        log.info("Generating " + symbols + " stocks at " + ticksPerSecond + " ticks per second");
+    }
+
+    @Override
+    public List<String> getFeeds() {
+        return Collections.singletonList(FEED);
+    }
+
+    @Override
+    public synchronized ScreenerPage fetch(String feed) {
+        long now = System.nanoTime();
+        boolean changed = lastNanos < 0;
+        if (!changed) {
+            pendingTicks += (now - lastNanos) / 1e9 * ticksPerSecond;
+        }
+        lastNanos = now;
+
+        long ticks = (long) pendingTicks;
+        if (ticks > 0) {
+            pendingTicks -= ticks;
+            double deviation = volatility * Math.sqrt(ticks);
+            for (int i = 0; i < prices.length; i++) {
+                double before = rounded(prices[i]);
+                prices[i] = Math.max(0.01, prices[i] * Math.exp(deviation * random.nextGaussian()));
+                changed |= rounded(prices[i]) != before;
+            }
+        }
+
+        Quotes quotes = new Quotes(prices.length);
+        for (int i = 0; i < prices.length; i++) {
+            quotes.add(symbols[i], rounded(prices[i]));
+        }
+        return new ScreenerPage(quotes, changed);
+    }
+
+    private static double rounded(double price) {
+        return Math.round(price * 100) / 100.0;
+    }
+}
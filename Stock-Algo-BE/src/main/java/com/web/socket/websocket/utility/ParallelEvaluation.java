@@ -0,0 +1,81 @@
+package com.web.socket.websocket.utility;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Evaluates every element of a list, or every index of a range, on the fork-join pool, splitting them in halves
+ * until the parts are small enough to be evaluated on one thread.
+ * The results are in the order of the list whatever order they were evaluated in, so merging them is deterministic
+ */
+public class ParallelEvaluation {
+
+    private ParallelEvaluation() {
+    }
+
+    /**
+     * Evaluates the elements, lists no larger than the batch size are evaluated on the calling thread
+     *
+     * @param elements
+     * @param evaluator must only change state that belongs to the element it's given
+     * @param batchSize
+     * @return
+     */
+    public static <T, R> List<R> evaluate(List<T> elements, Function<T, R> evaluator, int batchSize) {
+        return evaluate(elements.size(), index -> evaluator.apply(elements.get(index)), batchSize);
+    }
+
+    /**
+     * Evaluates the indexes from 0 up to the size, sizes no larger than the batch size are evaluated on the calling thread
+     *
+     * @param size
+     * @param evaluator must only change state that belongs to the index it's given
+     * @param batchSize
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public static <R> List<R> evaluate(int size, IntFunction<R> evaluator, int batchSize) {
+        Object[] results = new Object[size];
+        EvaluationTask<R> task = new EvaluationTask<>(evaluator, results, 0, size, Math.max(batchSize, 1));
+        if (size <= batchSize) {
+            task.compute();
+        } else {
+            ForkJoinPool.commonPool().invoke(task);
+        }
+        return (List<R>) Arrays.asList(results);
+    }
+
+    private static class EvaluationTask<R> extends RecursiveAction {
+
+        private final IntFunction<R> evaluator;
+        private final Object[] results;
+        private final int from;
+        private final int to;
+        private final int batchSize;
+
+        EvaluationTask(IntFunction<R> evaluator, Object[] results, int from, int to, int batchSize) {
+            this.evaluator = evaluator;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= batchSize) {
+                for (int i = from; i < to; i++) {
+                    results[i] = evaluator.apply(i);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new EvaluationTask<>(evaluator, results, from, middle, batchSize),
+                    new EvaluationTask<>(evaluator, results, middle, to, batchSize));
+        }
+    }
+}
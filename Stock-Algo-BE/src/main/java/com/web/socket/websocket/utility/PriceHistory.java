@@ -0,0 +1,168 @@
+package com.web.socket.websocket.utility;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * The recent prices of one stock, kept as two primitive columns of times and prices in a ring buffer
+ * so that appending never allocates. A price is only appended when it differs from the last one,
+ * every price is in effect from its time until the next one.
+ * The queries cover the window from a time until now, including the price in effect at the start of it
+ * <p>
+ * Only one thread appends at a time, the job thread or the one evaluating the stock, so appending takes no lock.
+ * A price is published by the volatile count of prices written after it, the queries read up to that count
+ * and stop at a price that may have been overwritten while they read it
+ */
+public class PriceHistory {
+
+    private final int capacity;
+    private final long[] times;
+    private final double[] prices;
+    private volatile long published;
+
+    /**
+     * The buffer has one slot more than the capacity, the one the next price is written to while the others are read
+     *
+     * @param capacity the number of prices kept
+     */
+    public PriceHistory(int capacity) {
+        this.capacity = capacity;
+        this.times = new long[capacity + 1];
+        this.prices = new double[capacity + 1];
+    }
+
+    /**
+     * Appends the price, overwriting the oldest one when the buffer is full. Must not be called by two threads at once
+     *
+     * @param time  in epoch milliseconds
+     * @param price
+     */
+    public void append(long time, double price) {
+        long count = published;
+        if (count > 0 && Double.compare(prices[slot(count - 1)], price) == 0) {
+            return;
+        }
+        int slot = slot(count);
+        times[slot] = time;
+        prices[slot] = price;
+        published = count + 1;
+    }
+
+    /**
+     * Gets the lowest price since the given time
+     *
+     * @param from in epoch milliseconds
+     * @return the price, or NaN if there are no prices
+     */
+    public double min(long from) {
+        double min = Double.NaN;
+        long newest = published - 1;
+        for (long sequence = newest; sequence > newest - capacity && sequence >= 0; sequence--) {
+            int slot = slot(sequence);
+            double price = prices[slot];
+            long time = times[slot];
+            if (overwritten(sequence)) {
+                break;
+            }
+            min = sequence == newest ? price : Math.min(min, price);
+            if (time <= from) {
+                break;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Gets the highest price since the given time
+     *
+     * @param from in epoch milliseconds
+     * @return the price, or NaN if there are no prices
+     */
+    public double max(long from) {
+        double max = Double.NaN;
+        long newest = published - 1;
+        for (long sequence = newest; sequence > newest - capacity && sequence >= 0; sequence--) {
+            int slot = slot(sequence);
+            double price = prices[slot];
+            long time = times[slot];
+            if (overwritten(sequence)) {
+                break;
+            }
+            max = sequence == newest ? price : Math.max(max, price);
+            if (time <= from) {
+                break;
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Gets the average price between the given times, weighted by how long every price was in effect.
+     * The part of the window before the oldest price is left out
+     *
+     * @param from in epoch milliseconds
+     * @param to   in epoch milliseconds
+     * @return the average, the last price if the window is empty or NaN if there are no prices
+     */
+    public double average(long from, long to) {
+        double last = Double.NaN;
+        double weightedSum = 0;
+        long totalWeight = 0;
+        long end = to;
+        long newest = published - 1;
+        for (long sequence = newest; sequence > newest - capacity && sequence >= 0; sequence--) {
+            int slot = slot(sequence);
+            double price = prices[slot];
+            long time = times[slot];
+            if (overwritten(sequence)) {
+                break;
+            }
+            if (sequence == newest) {
+                last = price;
+            }
+            long start = Math.max(time, from);
+            if (end > start) {
+                weightedSum += price * (end - start);
+                totalWeight += end - start;
+            }
+            end = Math.min(end, start);
+            if (time <= from) {
+                break;
+            }
+        }
+        return totalWeight == 0 ? last : weightedSum / totalWeight;
+    }
+
+    /**
+     * Gets the last price
+     *
+     * @return the price, or NaN if there are no prices
+     */
+    public double last() {
+        long newest = published - 1;
+        if (newest < 0) {
+            return Double.NaN;
+        }
+        double price = prices[slot(newest)];
+        return overwritten(newest) ? Double.NaN : price;
+    }
+
+    public int size() {
+        return (int) Math.min(published, capacity);
+    }
+
+    /**
+     * Has the price been overwritten, or is it being overwritten, since it was read?
+     * The fence keeps the reads of the price from being moved after the count is read again
+     *
+     * @param sequence the number of prices appended before it
+     * @return
+     */
+    private boolean overwritten(long sequence) {
+        VarHandle.acquireFence();
+        return published - sequence > capacity;
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % times.length);
+    }
+}
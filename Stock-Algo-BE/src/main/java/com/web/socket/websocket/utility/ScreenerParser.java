@@ -0,0 +1,347 @@
+package com.web.socket.websocket.utility;
+
+import com.web.socket.websocket.model.Quotes;
+
+/**
+ * Reads the stocks from a screener page in one forward pass over the html, without building a document.
+ * Every row of a table body is a stock, the name is the text of the link in the second cell
+ * and the last price is the text of the first cell that has any text.
+ * The names are looked up in the SymbolTable straight from the html, a string is only created for a new name
+ */
+public class ScreenerParser {
+
+    private static final int NAME_CELL = 2;
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L,
+            10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L, 10_000_000_000_000L, 100_000_000_000_000L
+    };
+    private static final String[] VOID_ELEMENTS = {
+            "area", "base", "br", "col", "embed", "hr", "img", "input", "link", "meta", "param", "source", "track", "wbr"
+    };
+
+    private final CharSequence html;
+    private final SymbolTable symbols;
+    private final Quotes quotes = new Quotes(256);
+    private final StringBuilder name = new StringBuilder();
+    private final StringBuilder price = new StringBuilder();
+    private int tableBodyDepth;
+    private boolean inRow;
+    private boolean inCell;
+    private int cell;
+    private boolean priceFound;
+    private double lastPrice;
+    private boolean anchorSeen;
+    private boolean inAnchor;
+    private int anchorChildDepth;
+
+    private ScreenerParser(CharSequence html, SymbolTable symbols) {
+        this.html = html;
+        this.symbols = symbols;
+    }
+
+    /**
+     * Parses the prices of the screener page, rows without a name or a valid price are skipped.
+     * The name is kept as it's written in the html, the same way it's stored in the database
+     *
+     * @param html
+     * @return
+     */
+    public static Quotes parse(CharSequence html) {
+        return parse(html, SymbolTable.DEFAULT);
+    }
+
+    /**
+     * Parses the prices of the screener page with the ids of the given symbol table
+     *
+     * @param html
+     * @param symbols
+     * @return
+     */
+    public static Quotes parse(CharSequence html, SymbolTable symbols) {
+        return new ScreenerParser(html, symbols).parse();
+    }
+
+    /**
+     * Parses a price written as "1,23", "1.23" or "1 234,50" without creating any strings
+     *
+     * @param text
+     * @return the price, or NaN if the text isn't a number
+     */
+    public static double parsePrice(CharSequence text) {
+        long mantissa = 0;
+        int decimals = -1;
+        boolean negative = false;
+        boolean digits = false;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (mantissa > (Long.MAX_VALUE - 9) / 10) {
+                    return Double.NaN;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                digits = true;
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            } else if (c == ',' || c == '.') {
+                if (decimals >= 0) {
+                    return Double.NaN;
+                }
+                decimals = 0;
+            } else if (c == '-' && !digits && !negative) {
+                negative = true;
+            } else if (c == '&') {
+                int end = indexOf(text, ';', i);
+                if (end == text.length()) {
+                    return Double.NaN;
+                }
+                i = end;
+            } else if (!Character.isWhitespace(c) && !Character.isSpaceChar(c)) {
+                return Double.NaN;
+            }
+        }
+
+        if (!digits || decimals >= POWERS_OF_TEN.length) {
+            return Double.NaN;
+        }
+        double value = decimals > 0 ? (double) mantissa / POWERS_OF_TEN[decimals] : mantissa;
+        return negative ? -value : value;
+    }
+
+    private Quotes parse() {
+        int length = html.length();
+        int i = 0;
+        while (i < length) {
+            if (html.charAt(i) != '<') {
+                int end = indexOf(html, '<', i);
+                text(i, end);
+                i = end;
+            } else if (regionMatches(i, "<!--")) {
+                i = Math.min(indexOf(html, "-->", i + 4) + 3, length);
+            } else {
+                i = tag(i);
+            }
+        }
+        endRow();
+        return quotes;
+    }
+
+    /**
+     * Handles the tag starting at the given index
+     *
+     * @param start
+     * @return the index after the tag
+     */
+    private int tag(int start) {
+        int end = tagEnd(start);
+        boolean closing = start + 1 < end && html.charAt(start + 1) == '/';
+        int nameStart = closing ? start + 2 : start + 1;
+        int nameEnd = nameStart;
+        while (nameEnd < end && Character.isLetterOrDigit(html.charAt(nameEnd))) {
+            nameEnd++;
+        }
+        boolean selfClosing = end > nameEnd && html.charAt(end - 1) == '/';
+
+        if (closing) {
+            closeTag(nameStart, nameEnd);
+        } else {
+            openTag(nameStart, nameEnd, selfClosing);
+            if (isTag(nameStart, nameEnd, "script") || isTag(nameStart, nameEnd, "style")) {
+                return skipRawText(end + 1, nameStart, nameEnd);
+            }
+        }
+        return Math.min(end + 1, html.length());
+    }
+
+    private void openTag(int nameStart, int nameEnd, boolean selfClosing) {
+        if (isTag(nameStart, nameEnd, "tbody")) {
+            tableBodyDepth++;
+        } else if (isTag(nameStart, nameEnd, "tr")) {
+            endRow();
+            inRow = tableBodyDepth > 0;
+        } else if (inRow && (isTag(nameStart, nameEnd, "td") || isTag(nameStart, nameEnd, "th"))) {
+            endCell();
+            cell++;
+            inCell = true;
+            if (!priceFound) {
+                price.setLength(0);
+            }
+        } else if (inAnchor) {
+            if (!selfClosing && !isVoidElement(nameStart, nameEnd)) {
+                anchorChildDepth++;
+            }
+        } else if (inCell && cell == NAME_CELL && !anchorSeen && isTag(nameStart, nameEnd, "a")) {
+            anchorSeen = true;
+            inAnchor = !selfClosing;
+            anchorChildDepth = 0;
+        }
+    }
+
+    private void closeTag(int nameStart, int nameEnd) {
+        if (isTag(nameStart, nameEnd, "tbody")) {
+            endRow();
+            tableBodyDepth = Math.max(tableBodyDepth - 1, 0);
+        } else if (isTag(nameStart, nameEnd, "tr")) {
+            endRow();
+        } else if (isTag(nameStart, nameEnd, "td") || isTag(nameStart, nameEnd, "th")) {
+            endCell();
+        } else if (inAnchor) {
+            if (anchorChildDepth == 0 && isTag(nameStart, nameEnd, "a")) {
+                inAnchor = false;
+            } else if (anchorChildDepth > 0) {
+                anchorChildDepth--;
+            }
+        }
+    }
+
+    private void text(int start, int end) {
+        if (!inCell) {
+            return;
+        }
+        if (!priceFound) {
+            price.append(html, start, end);
+        }
+        if (inAnchor && anchorChildDepth == 0) {
+            name.append(html, start, end);
+        }
+    }
+
+    private void endCell() {
+        if (!inCell) {
+            return;
+        }
+        if (!priceFound && !isBlank(price)) {
+            priceFound = true;
+            lastPrice = parsePrice(price);
+        }
+        inCell = false;
+        inAnchor = false;
+    }
+
+    private void endRow() {
+        if (!inRow) {
+            return;
+        }
+        endCell();
+        int nameStart = 0;
+        int nameEnd = name.length();
+        while (nameStart < nameEnd && name.charAt(nameStart) <= ' ') {
+            nameStart++;
+        }
+        while (nameEnd > nameStart && name.charAt(nameEnd - 1) <= ' ') {
+            nameEnd--;
+        }
+        if (nameStart < nameEnd && priceFound && !Double.isNaN(lastPrice)) {
+            quotes.add(symbols.intern(name, nameStart, nameEnd), lastPrice);
+        }
+
+        inRow = false;
+        cell = 0;
+        name.setLength(0);
+        price.setLength(0);
+        priceFound = false;
+        anchorSeen = false;
+        inAnchor = false;
+    }
+
+    /**
+     * Finds the end of the tag, skipping any '>' within quoted attribute values
+     *
+     * @param start
+     * @return
+     */
+    private int tagEnd(int start) {
+        char quote = 0;
+        for (int i = start + 1; i < html.length(); i++) {
+            char c = html.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                return i;
+            }
+        }
+        return html.length();
+    }
+
+    /**
+     * Skips the content of script and style elements, which may contain '<' that isn't a tag
+     *
+     * @param from
+     * @param nameStart
+     * @param nameEnd
+     * @return
+     */
+    private int skipRawText(int from, int nameStart, int nameEnd) {
+        for (int i = from; i < html.length() - 1; i++) {
+            if (html.charAt(i) == '<' && html.charAt(i + 1) == '/' && isTag(i + 2, i + 2 + nameEnd - nameStart, html, nameStart, nameEnd)) {
+                return tagEnd(i) + 1;
+            }
+        }
+        return html.length();
+    }
+
+    private boolean isVoidElement(int nameStart, int nameEnd) {
+        for (String element : VOID_ELEMENTS) {
+            if (isTag(nameStart, nameEnd, element)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isTag(int nameStart, int nameEnd, String tag) {
+        return isTag(nameStart, nameEnd, tag, 0, tag.length());
+    }
+
+    private boolean isTag(int nameStart, int nameEnd, CharSequence other, int otherStart, int otherEnd) {
+        if (nameEnd - nameStart != otherEnd - otherStart || nameEnd > html.length()) {
+            return false;
+        }
+        for (int i = 0; i < nameEnd - nameStart; i++) {
+            if (Character.toLowerCase(html.charAt(nameStart + i)) != Character.toLowerCase(other.charAt(otherStart + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean regionMatches(int start, String prefix) {
+        return isTag(start, start + prefix.length(), prefix);
+    }
+
+    private static boolean isBlank(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isWhitespace(text.charAt(i)) && !Character.isSpaceChar(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence text, char c, int from) {
+        for (int i = from; i < text.length(); i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return text.length();
+    }
+
+    private static int indexOf(CharSequence text, String target, int from) {
+        for (int i = from; i <= text.length() - target.length(); i++) {
+            int matched = 0;
+            while (matched < target.length() && text.charAt(i + matched) == target.charAt(matched)) {
+                matched++;
+            }
+            if (matched == target.length()) {
+                return i;
+            }
+        }
+        return text.length();
+    }
+}
@@ -1,10 +1,10 @@
 package com.web.socket.websocket.utility;
 
-import com.web.socket.websocket.model.Stock;
+import com.web.socket.websocket.model.StockState;
 
 import java.util.Comparator;
 
-public class StockComparator implements Comparator<Stock> {
+public class StockComparator implements Comparator<StockState> {
     /**
      * Compare the stocks entry to sort them accordingly
      * @param stock1
@@ -12,9 +12,7 @@ public class StockComparator implements Comparator<Stock> {
      * @return
      */
     @Override
-    public int compare(Stock stock1, Stock stock2) {
-        if(stock1.getEntry() > stock2.getEntry()) return 1;
-        else if(stock1.getEntry() < stock2.getEntry()) return -1;
-        else return 0;
+    public int compare(StockState stock1, StockState stock2) {
+        return Double.compare(stock1.getEntry(), stock2.getEntry());
     }
 }
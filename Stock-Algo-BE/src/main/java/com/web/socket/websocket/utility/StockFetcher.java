@@ -1,44 +1,198 @@
 package com.web.socket.websocket.utility;
 
-import com.web.socket.websocket.model.Stock;
-import com.web.socket.websocket.service.StockService;
+import com.web.socket.websocket.model.FetchResult;
+import com.web.socket.websocket.model.FetchStatus;
+import com.web.socket.websocket.model.Quotes;
+import com.web.socket.websocket.model.ScreenerPage;
+import com.web.socket.websocket.source.PriceSource;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
-import java.io.IOException;
-import java.util.Collection;
-import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
 
 @Slf4j
 @Configuration
 public class StockFetcher {
 
-    private static final String _5m_30m3 = "";
-    private static final String _10m_20m3_50y = "";
-    private static final String _50m3 = "";
-    private static final String _200thisYear = "";
-    private static final String _200OneYear = "";
-    private StockService stockService;
-
-    public StockFetcher(StockService stockService) {
-        this.stockService = stockService;
-    }
-
-    public List<Stock> getStocks() {
-        try {
-            return Stream.of(stockService.getStocks(_5m_30m3),
-                    stockService.getStocks(_10m_20m3_50y),
-                    stockService.getStocks(_50m3),
-                    stockService.getStocks(_200thisYear),
-                    stockService.getStocks(_200OneYear))
-                    .flatMap(Collection::stream)
-                    .distinct()
-                    .collect(Collectors.toList());
-        } catch (IOException e) {
-            log.info("Error fetching stocks: " + e.getMessage());
-            return null;
+    private PriceSource priceSource;
+    private List<String> feeds;
+    private MeterRegistry meterRegistry;
+    private ThreadPoolExecutor executor;
+    private long timeoutMillis;
+    private Set<String> running = ConcurrentHashMap.newKeySet();
+
+    public StockFetcher(PriceSource priceSource, MeterRegistry meterRegistry,
+                        @Value("${stock.fetch.timeout-millis:5000}") long timeoutMillis) {
+        this.priceSource = priceSource;
+        this.feeds = priceSource.getFeeds();
+        this.meterRegistry = meterRegistry;
+        this.timeoutMillis = timeoutMillis;
+        this.executor = new ThreadPoolExecutor(feeds.size(), feeds.size(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(feeds.size()), new CustomizableThreadFactory("stock-fetch-"));
+    }
+
+    public Quotes getQuotes() {
+        return fetch().getQuotes();
+    }
+
+    /**
+     * Fetches every feed of the price source on its own task, all within the same timeout,
+     * so a tick takes as long as the slowest source instead of all of them together.
+     * The quotes of a source are merged as soon as it answers, without waiting for the slower ones.
+     * A stock in more than one source, or more than once in a source, gets the first price merged,
+     * so every stock is in the quotes once even if only one source answered.
+     * A source that fails or times out is left out and marked in the statuses of the result, a task that times out
+     * is interrupted. A source still being fetched since an earlier tick isn't fetched again until it's done,
+     * it's left out as busy, so a hanging source holds at most one thread.
+     * The result has changed if any of the sources that answered has changed since it was last fetched.
+     * The time of every source is recorded in stock.fetch, tagged with the source and its status
+     *
+     * @return
+     */
+    public FetchResult fetch() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        BlockingQueue<Fetch> completed = new LinkedBlockingQueue<>();
+        Map<String, Fetch> fetches = new LinkedHashMap<>();
+        Map<String, FetchStatus> statuses = new LinkedHashMap<>();
+        for (String feed : feeds) {
+            if (!running.add(feed)) {
+                statuses.put(feed, FetchStatus.BUSY);
+                continue;
+            }
+            Fetch fetch = new Fetch(feed, completed);
+            try {
+                executor.execute(fetch);
+                fetches.put(feed, fetch);
+            } catch (RejectedExecutionException e) {
+                running.remove(feed);
+                statuses.put(feed, FetchStatus.FAILED);
+            }
+        }
+
+        Quotes merged = new Quotes(1024);
+        BitSet seen = new BitSet();
+        boolean changed = false;
+        FetchStatus unanswered = FetchStatus.TIMED_OUT;
+        while (!fetches.isEmpty()) {
+            Fetch fetch;
+            try {
+                fetch = completed.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                unanswered = FetchStatus.FAILED;
+                break;
+            }
+            if (fetch == null) {
+                break;
+            }
+            fetches.remove(fetch.feed);
+            FetchStatus status;
+            try {
+                ScreenerPage page = fetch.get();
+                merge(page.getQuotes(), merged, seen);
+                changed |= page.isChanged();
+                status = FetchStatus.OK;
+            } catch (ExecutionException e) {
+                log.info("Error fetching stocks from " + fetch.feed + ": " + e.getCause().getMessage());
+                status = FetchStatus.FAILED;
+            } catch (InterruptedException e) {
+                // not reached, the fetch is done
+                Thread.currentThread().interrupt();
+                status = FetchStatus.FAILED;
+            }
+            record(fetch, status, statuses);
+        }
+
+        for (Fetch fetch : fetches.values()) {
+            fetch.cancel(true);
+            if (unanswered == FetchStatus.TIMED_OUT) {
+                log.info("Timed out fetching stocks from " + fetch.feed);
+            }
+            record(fetch, unanswered, statuses);
+        }
+
+        return new FetchResult(merged, ordered(statuses), changed);
+    }
+
+    /**
+     * Adds the quotes of a source to the merged quotes, except the stocks that are in them already
+     *
+     * @param quotes
+     * @param merged
+     * @param seen   the symbols in the merged quotes
+     */
+    private void merge(Quotes quotes, Quotes merged, BitSet seen) {
+        for (int i = 0; i < quotes.size(); i++) {
+            if (!seen.get(quotes.symbol(i))) {
+                seen.set(quotes.symbol(i));
+                merged.add(quotes.symbol(i), quotes.price(i));
+            }
+        }
+    }
+
+    private void record(Fetch fetch, FetchStatus status, Map<String, FetchStatus> statuses) {
+        statuses.put(fetch.feed, status);
+        meterRegistry.timer("stock.fetch", "source", fetch.feed, "status", status.name())
+                .record(fetch.elapsedNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Orders the statuses the same way as the feeds
+     *
+     * @param statuses
+     * @return
+     */
+    private Map<String, FetchStatus> ordered(Map<String, FetchStatus> statuses) {
+        Map<String, FetchStatus> ordered = new LinkedHashMap<>();
+        feeds.forEach(feed -> ordered.put(feed, statuses.get(feed)));
+        return ordered;
+    }
+
+    /**
+     * The fetch of a feed, the feed is marked as running until the task has actually ended,
+     * which for an interrupted task is when the fetch gives up, not when it's cancelled.
+     * When it's done it's put in the queue of the fetches completed, like the ExecutorCompletionService does
+     */
+    private class Fetch extends FutureTask<ScreenerPage> {
+
+        private final String feed;
+        private final BlockingQueue<Fetch> completed;
+        private final long started = System.nanoTime();
+        private volatile long ended;
+
+        private Fetch(String feed, BlockingQueue<Fetch> completed) {
+            super(() -> priceSource.fetch(feed));
+            this.feed = feed;
+            this.completed = completed;
         }
+
+        @Override
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                running.remove(feed);
+            }
+        }
+
+        @Override
+        protected void done() {
+            ended = System.nanoTime();
+            completed.add(this);
+        }
+
+        private long elapsedNanos() {
+            return (ended == 0 ? System.nanoTime() : ended) - started;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
     }
 }
@@ -0,0 +1,105 @@
+package com.web.socket.websocket.utility;
+
+import com.web.socket.websocket.model.Stock;
+import com.web.socket.websocket.model.StockResult;
+import lombok.Value;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The part of the lists a client subscribes to, written as the end of the destination:
+ * up, down, notified or all for a list, or watch/{id} for the stocks of a watchlist of the client,
+ * optionally followed by min/{entry} for only the stocks with at least that entry, like down/min/0.5
+ */
+@Value
+public class StockFilter {
+
+    public enum Source {
+        UP, DOWN, NOTIFIED, ALL, WATCH
+    }
+
+    private static final String WATCH = "watch";
+    private static final String MIN = "min";
+
+    private Source source;
+    private String watchlist;
+    private Double minEntry;
+
+    /**
+     * Reads the filter from the end of a destination
+     *
+     * @param path
+     * @return the filter, or null if the path isn't one
+     */
+    public static StockFilter parse(String path) {
+        String[] segments = path.split("/", -1);
+        Source source;
+        String watchlist = null;
+        int next;
+        if (segments[0].equals(WATCH)) {
+            if (segments.length < 2 || segments[1].isEmpty()) {
+                return null;
+            }
+            source = Source.WATCH;
+            watchlist = segments[1];
+            next = 2;
+        } else {
+            source = Arrays.stream(Source.values())
+                    .filter(value -> value != Source.WATCH && value.name().equalsIgnoreCase(segments[0]))
+                    .findFirst()
+                    .orElse(null);
+            if (source == null) {
+                return null;
+            }
+            next = 1;
+        }
+
+        if (segments.length == next) {
+            return new StockFilter(source, watchlist, null);
+        }
+        if (segments.length != next + 2 || !segments[next].equals(MIN)) {
+            return null;
+        }
+        try {
+            double minEntry = Double.parseDouble(segments[next + 1]);
+            return Double.isFinite(minEntry) ? new StockFilter(source, watchlist, minEntry) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the stocks of the lists that pass the filter, in the order of the lists
+     *
+     * @param result
+     * @param watched the names in the watchlist, if the filter is of a watchlist
+     * @return
+     */
+    public List<Stock> apply(StockResult result, Set<String> watched) {
+        List<Stock> stocks;
+        switch (source) {
+            case UP:
+                stocks = result.getUpTrend();
+                break;
+            case DOWN:
+                stocks = result.getDownTrend();
+                break;
+            case NOTIFIED:
+                stocks = result.getStocksNotified();
+                break;
+            default:
+                Map<String, Stock> unique = new LinkedHashMap<>();
+                Stream.of(result.getUpTrend(), result.getDownTrend(), result.getStocksNotified())
+                        .flatMap(Collection::stream)
+                        .filter(stock -> source != Source.WATCH || watched.contains(stock.getName()))
+                        .forEach(stock -> unique.putIfAbsent(stock.getName(), stock));
+                stocks = new ArrayList<>(unique.values());
+        }
+        if (minEntry == null) {
+            return stocks;
+        }
+        return stocks.stream().filter(stock -> stock.getEntry() >= minEntry).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,145 @@
+package com.web.socket.websocket.utility;
+
+import com.web.socket.websocket.model.StockState;
+
+import java.util.*;
+
+/**
+ * Keeps stocks ordered by entry. Stocks with the same entry keep the order they were added in, in both directions,
+ * the way the lists kept it when they were sorted. The entry is captured when a stock is ranked,
+ * so only the stocks whose entry has changed need to be repositioned.
+ * The ordered lists are only copied out of the ranking again when it has changed since they were last copied
+ */
+public class StockRanking {
+
+    private NavigableSet<Ranked> ranked = new TreeSet<>();
+    private Ranked[] bySymbol = new Ranked[0];
+    private long added;
+    private List<StockState> ascending;
+    private List<StockState> descending;
+
+    /**
+     * Adds the stock at the position of its current entry, replacing it if it's already ranked
+     *
+     * @param stock
+     */
+    public void add(StockState stock) {
+        remove(stock);
+        Ranked entry = new Ranked(stock.getEntry(), ++added, stock);
+        ranked.add(entry);
+        changed();
+        if (stock.getSymbol() >= bySymbol.length) {
+            bySymbol = Arrays.copyOf(bySymbol, Math.max(stock.getSymbol() + 1, bySymbol.length * 2));
+        }
+        bySymbol[stock.getSymbol()] = entry;
+    }
+
+    public void remove(StockState stock) {
+        Ranked removed = find(stock);
+        if (removed != null) {
+            ranked.remove(removed);
+            bySymbol[stock.getSymbol()] = null;
+            changed();
+        }
+    }
+
+    /**
+     * Repositions the stock if its entry has changed since it was ranked
+     *
+     * @param stock
+     * @return true if the stock was moved
+     */
+    public boolean reposition(StockState stock) {
+        Ranked current = find(stock);
+        if (current == null || Double.compare(current.entry, stock.getEntry()) == 0) {
+            return false;
+        }
+        ranked.remove(current);
+        Ranked moved = new Ranked(stock.getEntry(), current.sequence, stock);
+        ranked.add(moved);
+        bySymbol[stock.getSymbol()] = moved;
+        changed();
+        return true;
+    }
+
+    public boolean contains(StockState stock) {
+        return find(stock) != null;
+    }
+
+    public int size() {
+        return ranked.size();
+    }
+
+    /**
+     * Gets the stocks from lowest to highest entry, the same list until the ranking changes
+     *
+     * @return
+     */
+    public List<StockState> ascending() {
+        if (ascending == null) {
+            List<StockState> stocks = new ArrayList<>(ranked.size());
+            ranked.forEach(entry -> stocks.add(entry.stock));
+            ascending = Collections.unmodifiableList(stocks);
+        }
+        return ascending;
+    }
+
+    /**
+     * Gets the stocks from highest to lowest entry, the same list until the ranking changes.
+     * The stocks with the same entry are turned back to the order they were added in
+     *
+     * @return
+     */
+    public List<StockState> descending() {
+        if (descending == null) {
+            List<StockState> stocks = new ArrayList<>(ranked.size());
+            double tie = Double.NaN;
+            int tieStart = 0;
+            for (Ranked entry : ranked.descendingSet()) {
+                if (Double.compare(entry.entry, tie) != 0) {
+                    Collections.reverse(stocks.subList(tieStart, stocks.size()));
+                    tie = entry.entry;
+                    tieStart = stocks.size();
+                }
+                stocks.add(entry.stock);
+            }
+            Collections.reverse(stocks.subList(tieStart, stocks.size()));
+            descending = Collections.unmodifiableList(stocks);
+        }
+        return descending;
+    }
+
+    public void clear() {
+        ranked.clear();
+        Arrays.fill(bySymbol, null);
+        added = 0;
+        changed();
+    }
+
+    private void changed() {
+        ascending = null;
+        descending = null;
+    }
+
+    private Ranked find(StockState stock) {
+        return stock.getSymbol() < bySymbol.length ? bySymbol[stock.getSymbol()] : null;
+    }
+
+    private static final class Ranked implements Comparable<Ranked> {
+        private final double entry;
+        private final long sequence;
+        private final StockState stock;
+
+        private Ranked(double entry, long sequence, StockState stock) {
+            this.entry = entry;
+            this.sequence = sequence;
+            this.stock = stock;
+        }
+
+        @Override
+        public int compareTo(Ranked other) {
+            int byEntry = Double.compare(entry, other.entry);
+            return byEntry != 0 ? byEntry : Long.compare(sequence, other.sequence);
+        }
+    }
+}
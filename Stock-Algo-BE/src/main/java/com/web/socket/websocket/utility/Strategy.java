@@ -0,0 +1,149 @@
+package com.web.socket.websocket.utility;
+
+import com.web.socket.websocket.model.StockState;
+import com.web.socket.websocket.model.TrendType;
+import lombok.Getter;
+import org.springframework.core.env.PropertyResolver;
+
+/**
+ * A named set of buy rules, read from stock.strategy.{name}.* and compiled into primitive fields
+ * so checking a stock on every tick allocates nothing. A stock is a buy signal of the strategy when
+ * <ul>
+ * <li>it's in one of the trends, a comma separated list of trends (DOWN)</li>
+ * <li>its entry, calculated with the uptrend-factor (1.03), is between min-entry (0) and max-entry (none)</li>
+ * <li>with a window-millis (0, no window), its price has risen at least min-rise (0, 0.02 is 2%) from the lowest
+ * price in the window and fallen at most max-drop (none, 0.05 is 5%) from the highest</li>
+ * </ul>
+ * A strategy without any properties is the same as the rules used live
+ */
+@Getter
+public class Strategy {
+
+    private static final TrendType[] TRENDS = TrendType.values();
+
+    private final String name;
+    private final int trends;
+    private final TrendRules rules;
+    private final double minEntry;
+    private final double maxEntry;
+    private final long windowMillis;
+    private final double minRise;
+    private final double maxDrop;
+
+    public Strategy(String name, int trends, double uptrendFactor, double minEntry, double maxEntry,
+                    long windowMillis, double minRise, double maxDrop) {
+        this.name = name;
+        this.trends = trends;
+        this.rules = new TrendRules(uptrendFactor, TrendRules.DEFAULT.getDowntrendFactor());
+        this.minEntry = minEntry;
+        this.maxEntry = maxEntry;
+        this.windowMillis = windowMillis;
+        this.minRise = minRise;
+        this.maxDrop = maxDrop;
+    }
+
+    /**
+     * Reads the strategy from its properties
+     *
+     * @param name
+     * @param properties
+     * @return
+     * @throws IllegalStateException if a property isn't valid
+     */
+    public static Strategy of(String name, PropertyResolver properties) {
+        String prefix = "stock.strategy." + name + ".";
+        try {
+            int trends = 0;
+            for (String trend : properties.getProperty(prefix + "trends", TrendType.DOWN.name()).split(",")) {
+                trends |= 1 << TrendType.valueOf(trend.trim().toUpperCase()).ordinal();
+            }
+            return new Strategy(name, trends,
+                    properties.getProperty(prefix + "uptrend-factor", Double.class, TrendRules.DEFAULT.getUptrendFactor()),
+                    properties.getProperty(prefix + "min-entry", Double.class, 0.0),
+                    properties.getProperty(prefix + "max-entry", Double.class, Double.POSITIVE_INFINITY),
+                    properties.getProperty(prefix + "window-millis", Long.class, 0L),
+                    properties.getProperty(prefix + "min-rise", Double.class, 0.0),
+                    properties.getProperty(prefix + "max-drop", Double.class, Double.POSITIVE_INFINITY));
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("Invalid strategy " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Is the stock a buy signal of the strategy?
+     *
+     * @param stock
+     * @param history the prices of the stock today, may be null
+     * @param now     in epoch milliseconds
+     * @return
+     */
+    public boolean isBuySignal(StockState stock, PriceHistory history, long now) {
+        TrendType trendType = stock.getTrendType();
+        if (trendType == null || (trends & 1 << trendType.ordinal()) == 0) {
+            return false;
+        }
+        double entry = entry(stock);
+        if (entry < minEntry || entry > maxEntry) {
+            return false;
+        }
+        if (windowMillis <= 0) {
+            return true;
+        }
+        if (history == null) {
+            return false;
+        }
+        long from = now - windowMillis;
+        double price = stock.getLastPrice();
+        // the lowest price is NaN when there are no prices, which is never a signal
+        if (!(price >= history.min(from) * (1 + minRise))) {
+            return false;
+        }
+        return Double.isInfinite(maxDrop) || price >= history.max(from) * (1 - maxDrop);
+    }
+
+    /**
+     * Does the strategy look at the prices in a window? If it does, a stock can become a signal
+     * while its price stays the same, as the prices in the window move on
+     *
+     * @return
+     */
+    public boolean hasWindow() {
+        return windowMillis > 0;
+    }
+
+    /**
+     * Calculates the entry of the stock with the uptrend factor of the strategy
+     *
+     * @param stock
+     * @return
+     */
+    public double entry(StockState stock) {
+        return rules.entry(stock.getLastPrice(), stock.getLowestClosingPrice());
+    }
+
+    /**
+     * Does the strategy signal stocks in the trend?
+     *
+     * @param trendType
+     * @return
+     */
+    public boolean isInTrends(TrendType trendType) {
+        return (trends & 1 << trendType.ordinal()) != 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder described = new StringBuilder(name).append(" trends=");
+        for (TrendType trendType : TRENDS) {
+            if (isInTrends(trendType)) {
+                described.append(trendType).append(' ');
+            }
+        }
+        return described.append("uptrend-factor=").append(rules.getUptrendFactor())
+                .append(" entry=").append(minEntry).append("..").append(maxEntry)
+                .append(" window-millis=").append(windowMillis)
+                .append(" min-rise=").append(minRise)
+                .append(" max-drop=").append(maxDrop)
+                .toString();
+    }
+}
@@ -0,0 +1,182 @@
+package com.web.socket.websocket.utility;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Gives every stock name a dense int id, in the order the names are first seen, so the hot path can index arrays
+ * instead of hashing strings. Finding the id of a known name doesn't lock and doesn't create any objects,
+ * not even the string of the name, only adding a new name does. Ids are never reused,
+ * there are few enough names to keep all of them for as long as the application runs
+ */
+public class SymbolTable {
+
+    public static final SymbolTable DEFAULT = new SymbolTable();
+
+    private volatile Table table = new Table(1024);
+    private volatile String[] names = new String[512];
+    private volatile int size;
+
+    /**
+     * Gets the id of the name
+     *
+     * @param name
+     * @return the id, or -1 if the name has no id
+     */
+    public int find(CharSequence name) {
+        return find(name, 0, name.length());
+    }
+
+    /**
+     * Gets the id of the name between start and end of the text
+     *
+     * @param text
+     * @param start
+     * @param end
+     * @return the id, or -1 if the name has no id
+     */
+    public int find(CharSequence text, int start, int end) {
+        return table.find(text, start, end, hash(text, start, end));
+    }
+
+    /**
+     * Gets the id of the name, giving it the next id if it has none
+     *
+     * @param name
+     * @return
+     */
+    public int intern(CharSequence name) {
+        return intern(name, 0, name.length());
+    }
+
+    /**
+     * Gets the id of the name between start and end of the text, giving it the next id if it has none
+     *
+     * @param text
+     * @param start
+     * @param end
+     * @return
+     */
+    public int intern(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        int id = table.find(text, start, end, hash);
+        return id >= 0 ? id : add(text, start, end, hash);
+    }
+
+    /**
+     * Gets the name of the id, the same string every time
+     *
+     * @param id
+     * @return
+     */
+    public String name(int id) {
+        return names[id];
+    }
+
+    /**
+     * The number of names, every id is less than it
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds the name unless another thread just did. The name is published last, by putting it in the table,
+     * so a thread that finds it also sees its id and its entry in the names
+     */
+    private synchronized int add(CharSequence text, int start, int end, int hash) {
+        int id = table.find(text, start, end, hash);
+        if (id >= 0) {
+            return id;
+        }
+        id = size;
+        String name = text.subSequence(start, end).toString();
+        if (id == names.length) {
+            names = Arrays.copyOf(names, id * 2);
+        }
+        names[id] = name;
+        size = id + 1;
+
+        if (size * 2 > table.capacity()) {
+            Table grown = new Table(table.capacity() * 2);
+            for (int i = 0; i < size; i++) {
+                grown.put(names[i], i);
+            }
+            table = grown;
+        } else {
+            table.put(name, id);
+        }
+        return id;
+    }
+
+    /**
+     * The same hash as String.hashCode, so the names that are strings already have it cached
+     */
+    private static int hash(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash;
+    }
+
+    /**
+     * An open addressing hash table that is at most half full. The names are read with volatile semantics,
+     * the ids are written before them
+     */
+    private static final class Table {
+
+        private final AtomicReferenceArray<String> keys;
+        private final int[] ids;
+        private final int mask;
+
+        Table(int capacity) {
+            this.keys = new AtomicReferenceArray<>(capacity);
+            this.ids = new int[capacity];
+            this.mask = capacity - 1;
+        }
+
+        int capacity() {
+            return ids.length;
+        }
+
+        int find(CharSequence text, int start, int end, int hash) {
+            for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+                String key = keys.get(slot);
+                if (key == null) {
+                    return -1;
+                }
+                if (matches(key, text, start, end)) {
+                    return ids[slot];
+                }
+            }
+        }
+
+        void put(String name, int id) {
+            int slot = spread(name.hashCode()) & mask;
+            while (keys.get(slot) != null) {
+                slot = (slot + 1) & mask;
+            }
+            ids[slot] = id;
+            keys.set(slot, name);
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+
+        private static boolean matches(String key, CharSequence text, int start, int end) {
+            if (key.length() != end - start) {
+                return false;
+            }
+            for (int i = 0; i < key.length(); i++) {
+                if (key.charAt(i) != text.charAt(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.web.socket.websocket.utility;
+
+import com.web.socket.websocket.model.StockState;
+import com.web.socket.websocket.model.TrendType;
+
+import java.util.*;
+
+/**
+ * Holds the stocks partitioned after their trend, indexed by symbol id so that
+ * membership, lookup and moving between trends doesn't depend on the number of stocks.
+ * Every trend is kept ranked by entry
+ */
+public class TrendIndex {
+
+    private StockState[] stocks = new StockState[0];
+    private Map<TrendType, StockRanking> trends = new EnumMap<>(TrendType.class);
+
+    public TrendIndex() {
+        for (TrendType trendType : TrendType.values()) {
+            trends.put(trendType, new StockRanking());
+        }
+    }
+
+    /**
+     * Adds the stock to the trend it has, replacing it if it's already in the index
+     *
+     * @param stock
+     */
+    public void add(StockState stock) {
+        remove(stock);
+        if (stock.getSymbol() >= stocks.length) {
+            stocks = Arrays.copyOf(stocks, Math.max(stock.getSymbol() + 1, stocks.length * 2));
+        }
+        stocks[stock.getSymbol()] = stock;
+        trends.get(stock.getTrendType()).add(stock);
+    }
+
+    /**
+     * Moves the stock to the given trend, adding it if it isn't in the index
+     *
+     * @param stock
+     * @param trendType
+     */
+    public void move(StockState stock, TrendType trendType) {
+        remove(stock);
+        stock.setTrendType(trendType);
+        add(stock);
+    }
+
+    /**
+     * Repositions the stock within its trend if its entry has changed
+     *
+     * @param stock
+     */
+    public void reposition(StockState stock) {
+        StockState indexed = find(stock.getSymbol());
+        if (indexed != null) {
+            trends.get(indexed.getTrendType()).reposition(indexed);
+        }
+    }
+
+    /**
+     * Removes the stock from the index
+     *
+     * @param stock
+     */
+    public void remove(StockState stock) {
+        StockState removed = find(stock.getSymbol());
+        if (removed != null) {
+            stocks[stock.getSymbol()] = null;
+            trends.values().forEach(trend -> trend.remove(stock));
+        }
+    }
+
+    public boolean contains(StockState stock) {
+        return find(stock.getSymbol()) != null;
+    }
+
+    /**
+     * Is the stock in the index under the given trend?
+     *
+     * @param stock
+     * @param trendType
+     * @return
+     */
+    public boolean isInTrend(StockState stock, TrendType trendType) {
+        return trends.get(trendType).contains(stock);
+    }
+
+    /**
+     * Gets the stock with the symbol id
+     *
+     * @param symbol
+     * @return the stock, or null if it isn't in the index
+     */
+    public StockState find(int symbol) {
+        return symbol < stocks.length ? stocks[symbol] : null;
+    }
+
+    /**
+     * Gets the stocks of the given trend from lowest to highest entry
+     *
+     * @param trendType
+     * @return
+     */
+    public List<StockState> ascending(TrendType trendType) {
+        return trends.get(trendType).ascending();
+    }
+
+    /**
+     * Gets the stocks of the given trend from highest to lowest entry
+     *
+     * @param trendType
+     * @return
+     */
+    public List<StockState> descending(TrendType trendType) {
+        return trends.get(trendType).descending();
+    }
+
+    public void clear() {
+        Arrays.fill(stocks, null);
+        trends.values().forEach(StockRanking::clear);
+    }
+}
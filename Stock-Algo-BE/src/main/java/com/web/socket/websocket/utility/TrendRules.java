@@ -0,0 +1,78 @@
+package com.web.socket.websocket.utility;
+
+import com.web.socket.websocket.model.TrendType;
+import lombok.Value;
+
+import static com.web.socket.websocket.utility.NumberUtilities.*;
+
+/**
+ * The rules deciding the entry of a stock, when it moves between trends and when it's a buy signal.
+ * They only work on prices so the same rules are used live and in backtests,
+ * the factors can be changed to try other rules than the ones used live
+ */
+@Value
+public class TrendRules {
+
+    public static final TrendRules DEFAULT = new TrendRules(THREE_PERCENT, NINETY_TWO_PERCENT);
+
+    /**
+     * How much the price has to rise from the lowest closing price, 1.03 is 3%
+     */
+    private double uptrendFactor;
+    /**
+     * How low the price may fall compared to the highest closing price, 0.92 is 8%
+     */
+    private double downtrendFactor;
+
+    /**
+     * Calculates the percentage of the entry point from the last price, entry >= 0 Means buy.
+     * The entry is rounded to 2 decimals
+     *
+     * @param lastPrice
+     * @param lowestClosingPrice
+     * @return
+     */
+    public double entry(double lastPrice, double lowestClosingPrice) {
+        double calculatedEntry = ((lastPrice / (lowestClosingPrice * uptrendFactor))
+                - CONVERT_TO_PERCENT_DIFFERENCE)
+                * CONVERT_TO_WHOLE_NUMBER;
+
+        return Math.round(calculatedEntry * 100.0) / 100.0;
+    }
+
+    /**
+     * Is a stock in the trend with the entry a buy signal?
+     *
+     * @param trendType
+     * @param entry
+     * @return
+     */
+    public boolean isBuySignal(TrendType trendType, double entry) {
+        return trendType == TrendType.DOWN && entry >= 0;
+    }
+
+    /**
+     * Decides which trend a stock is moving to at closing. A stock in down trend or undecided moves to the up trend
+     * when it has increased from the lowest closing price, a stock in up trend or undecided moves to the down trend
+     * when its entry is below 0 or it has decreased from the highest closing price
+     *
+     * @param trendType
+     * @param lastPrice
+     * @param entry
+     * @param highestClosingPrice
+     * @param lowestClosingPrice
+     * @return the trend to move to, or null if the stock stays in its trend
+     */
+    public TrendType transition(TrendType trendType, double lastPrice, double entry,
+                                double highestClosingPrice, double lowestClosingPrice) {
+        boolean upOrUndecided = trendType == TrendType.UP || trendType == TrendType.UNDECIDED;
+        boolean downOrUndecided = trendType == TrendType.DOWN || trendType == TrendType.UNDECIDED;
+        if (lastPrice >= lowestClosingPrice * uptrendFactor && downOrUndecided) {
+            return TrendType.UP;
+        }
+        if (upOrUndecided && (entry < 0 || lastPrice / highestClosingPrice < downtrendFactor)) {
+            return TrendType.DOWN;
+        }
+        return null;
+    }
+}
@@ -3,6 +3,8 @@ import SockJsClient from 'react-stomp';
 import './css/StockFetchDisplay.css';
 import Notification from './Notification';
 
+const LISTS = ['upTrend', 'downTrend', 'stocksNotified'];
+
 class StockFetchDisplay extends Component {
   constructor(props) {
     super(props);
@@ -11,6 +13,58 @@ class StockFetchDisplay extends Component {
       downTrend: [],
       stocksNotified: []
     }
+    this.sequence = null;
+    this.stocks = {};
+    this.names = { upTrend: [], downTrend: [], stocksNotified: [] };
+  }
+
+  /**
+   * Replace all lists with the snapshot sent from the backend
+   */
+  applySnapshot = (snapshot) => {
+    this.sequence = snapshot.sequence;
+    this.stocks = {};
+    LISTS.forEach((list) => {
+      snapshot[list].forEach((stock) => this.stocks[stock.name] = stock);
+      this.names[list] = snapshot[list].map((stock) => stock.name);
+    });
+    this.updateLists();
+  }
+
+  /**
+   * Apply the changes sent from the backend, if a delta has been missed ask the backend for a new snapshot
+   */
+  applyDelta = (delta) => {
+    if (this.sequence === null || delta.sequence <= this.sequence) {
+      return;
+    }
+    if (delta.sequence !== this.sequence + 1) {
+      console.log("Missed delta, resyncing");
+      this.sequence = null;
+      this.clientRef.sendMessage('/app/stock/resync', '');
+      return;
+    }
+    this.sequence = delta.sequence;
+    delta.changed.forEach((stock) => this.stocks[stock.name] = stock);
+    LISTS.forEach((list) => {
+      const removed = new Set(delta[list].removed);
+      this.names[list] = delta[list].added.concat(this.names[list].filter((name) => !removed.has(name)));
+    });
+    this.updateLists();
+  }
+
+  /**
+   * Sort the lists the same way as the backend, latest buy signal first and by entry for the trends
+   */
+  updateLists = () => {
+    const byEntry = (a, b) => a.entry - b.entry || (a.name < b.name ? -1 : a.name > b.name ? 1 : 0);
+    const byTimeOfBuySignal = (a, b) => (b.timeOfBuySignal || '').localeCompare(a.timeOfBuySignal || '');
+    const toStocks = (list) => this.names[list].map((name) => this.stocks[name]);
+    this.setState({
+      upTrend: toStocks('upTrend').sort(byEntry),
+      downTrend: toStocks('downTrend').sort((a, b) => byEntry(b, a)),
+      stocksNotified: toStocks('stocksNotified').sort(byTimeOfBuySignal)
+    })
   }
 
   /**
@@ -118,7 +172,7 @@ class StockFetchDisplay extends Component {
       /**
        * Display the stocks in a row
        * Notification - Send all stocks that are in notified list to the Notification component
-       * SockJSClient - Accept the data sent from the backend and assign to the lists within the state of the component
+       * SockJSClient - Accept the snapshot and the deltas sent from the backend and apply them to the lists within the state of the component
        */
       <div className="row">
         {this.displayUpTrendStocks()}
@@ -127,19 +181,20 @@ class StockFetchDisplay extends Component {
         <Notification stocksNotified={this.state.stocksNotified} />
 
         <SockJsClient url='http://hitechdynasty.se:8085/stock-list/'
-          topics={['/topic/stock']}
+          topics={['/topic/stock/delta', '/app/stock/snapshot', '/user/queue/stock/snapshot']}
           onConnect={() => {
             console.log("connected");
           }}
           onDisconnect={() => {
             console.log("Disconnected");
+            this.sequence = null;
           }}
-          onMessage={(resp) => {
-            this.setState({
-              upTrend: resp.upTrend,
-              downTrend: resp.downTrend,
-              stocksNotified: resp.stocksNotified
-            })
+          onMessage={(resp, topic) => {
+            if (topic === '/topic/stock/delta') {
+              this.applyDelta(resp);
+            } else {
+              this.applySnapshot(resp);
+            }
           }}
           ref={(client) => {
             this.clientRef = client